@@ -0,0 +1,454 @@
+package au.id.simo.useful.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps an ExecutorService to limit the number of tasks running at once.
+ * <p>
+ * Provides admission control for delegate ExecutorServices that would
+ * otherwise create a thread per task, such as
+ * {@link java.util.concurrent.Executors#newCachedThreadPool()}. At most
+ * {@code maxActive} tasks are passed to the delegate at a time, with up to
+ * {@code maxQueued} further tasks waiting in a queue. When the queue is full
+ * the {@link OverflowPolicy} decides whether the task is rejected, or the
+ * submitting thread blocks until there is room.
+ * <p>
+ * Usage Example, capping the generator threads of
+ * {@link au.id.simo.useful.io.ConcurrentGeneratorResource}:
+ * <pre>
+ * ExecutorService bounded = new BoundedExecutorService(
+ *         Executors.newCachedThreadPool(), 64, 256
+ * );
+ * ConcurrentGeneratorResource.setDefaultExecutorService(bounded);
+ * </pre>
+ * <p>
+ * Queue length, time spent waiting in the queue and rejection counts are
+ * available to monitor overload.
+ * <p>
+ * Shutting down this ExecutorService does not shut down the delegate.
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+
+    /**
+     * What to do with a task submitted when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Throw a {@link RejectedExecutionException}.
+         */
+        REJECT,
+        /**
+         * Block the submitting thread until there is room in the queue, or
+         * the block timeout is reached in which case the task is rejected.
+         */
+        BLOCK
+    }
+
+    private final ExecutorService delegate;
+    private final int maxActive;
+    private final int maxQueued;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutNanos;
+
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Condition terminated;
+    private final Deque<QueuedTask> queue;
+    private final Set<Thread> runningThreads;
+
+    private int activeCount;
+    private boolean shutdown;
+
+    private final AtomicLong rejectedCount;
+    private final AtomicLong startedCount;
+    private final AtomicLong completedCount;
+    private final AtomicLong totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+
+    /**
+     * Creates an instance that rejects tasks when the queue is full.
+     *
+     * @param delegate the ExecutorService that runs the tasks.
+     * @param maxActive the maximum number of tasks running at once.
+     * @param maxQueued the maximum number of tasks waiting to run.
+     */
+    public BoundedExecutorService(ExecutorService delegate, int maxActive, int maxQueued) {
+        this(delegate, maxActive, maxQueued, OverflowPolicy.REJECT, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the ExecutorService that runs the tasks.
+     * @param maxActive the maximum number of tasks running at once.
+     * @param maxQueued the maximum number of tasks waiting to run.
+     * @param policy what to do with a task submitted when the queue is full.
+     * @param blockTimeout only used by {@link OverflowPolicy#BLOCK}, the
+     * maximum time to block before rejecting a task. Zero to block
+     * indefinitely.
+     * @param unit the time unit of the blockTimeout argument.
+     * @throws IllegalArgumentException if maxActive is less than one, or
+     * maxQueued or blockTimeout is negative.
+     */
+    public BoundedExecutorService(ExecutorService delegate, int maxActive, int maxQueued, OverflowPolicy policy, long blockTimeout, TimeUnit unit) {
+        if (maxActive < 1) {
+            throw new IllegalArgumentException("maxActive must be greater than zero");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued cannot be negative");
+        }
+        if (blockTimeout < 0) {
+            throw new IllegalArgumentException("blockTimeout cannot be negative");
+        }
+        this.delegate = delegate;
+        this.maxActive = maxActive;
+        this.maxQueued = maxQueued;
+        this.policy = policy;
+        this.blockTimeoutNanos = unit.toNanos(blockTimeout);
+
+        this.lock = new ReentrantLock();
+        this.notFull = lock.newCondition();
+        this.terminated = lock.newCondition();
+        this.queue = new ArrayDeque<>();
+        this.runningThreads = ConcurrentHashMap.newKeySet();
+
+        this.rejectedCount = new AtomicLong();
+        this.startedCount = new AtomicLong();
+        this.completedCount = new AtomicLong();
+        this.totalWaitNanos = new AtomicLong();
+        this.maxWaitNanos = new AtomicLong();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        QueuedTask task = new QueuedTask(command);
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw reject("Executor has been shutdown");
+            }
+            if (activeCount < maxActive) {
+                activeCount++;
+                startTask(task);
+                return;
+            }
+            if (queue.size() >= maxQueued) {
+                awaitQueueSpace();
+            }
+            if (activeCount < maxActive) {
+                // a slot may have freed up while blocked
+                activeCount++;
+                startTask(task);
+                return;
+            }
+            queue.add(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for space in the queue according to the overflow policy.
+     * <p>
+     * Must be called while holding the lock.
+     */
+    private void awaitQueueSpace() {
+        if (policy == OverflowPolicy.REJECT) {
+            throw reject("Queue is full");
+        }
+        long remainingNanos = blockTimeoutNanos;
+        try {
+            while (queue.size() >= maxQueued && activeCount >= maxActive) {
+                if (blockTimeoutNanos == 0) {
+                    notFull.await();
+                } else if (remainingNanos <= 0) {
+                    throw reject("Timed out waiting for space in the queue");
+                } else {
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                if (shutdown) {
+                    throw reject("Executor has been shutdown");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            RejectedExecutionException ree = reject("Interrupted waiting for space in the queue");
+            ree.initCause(ex);
+            throw ree;
+        }
+    }
+
+    private RejectedExecutionException reject(String message) {
+        rejectedCount.incrementAndGet();
+        return new RejectedExecutionException(message);
+    }
+
+    /**
+     * Passes the task to the delegate. The caller must have already counted
+     * the task as active.
+     */
+    private void startTask(QueuedTask task) {
+        try {
+            delegate.execute(task);
+        } catch (RuntimeException ex) {
+            rejectedCount.incrementAndGet();
+            activeCount--;
+            notFull.signal();
+            signalIfTerminated();
+            throw ex;
+        }
+    }
+
+    /**
+     * Called when a task finishes, to start the next queued task in the freed
+     * slot.
+     */
+    private void taskFinished() {
+        lock.lock();
+        try {
+            QueuedTask next;
+            while ((next = queue.poll()) != null) {
+                notFull.signal();
+                try {
+                    delegate.execute(next);
+                    return;
+                } catch (RuntimeException ex) {
+                    // delegate refused the queued task, so don't leave any
+                    // Future waiting forever.
+                    rejectedCount.incrementAndGet();
+                    next.cancel();
+                }
+            }
+            activeCount--;
+            notFull.signal();
+            signalIfTerminated();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void signalIfTerminated() {
+        if (shutdown && activeCount == 0 && queue.isEmpty()) {
+            terminated.signalAll();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            // release any blocked submitters so they are rejected.
+            notFull.signalAll();
+            signalIfTerminated();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns all queued tasks, and interrupts the threads of any
+     * running tasks.
+     *
+     * @return the tasks that never started.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> neverStarted = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (QueuedTask task : queue) {
+                neverStarted.add(task.command);
+            }
+            queue.clear();
+            notFull.signalAll();
+            for (Thread thread : runningThreads) {
+                thread.interrupt();
+            }
+            signalIfTerminated();
+        } finally {
+            lock.unlock();
+        }
+        return neverStarted;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && activeCount == 0 && queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(shutdown && activeCount == 0 && queue.isEmpty())) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = terminated.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks currently passed to the delegate.
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return activeCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be passed to the delegate.
+     */
+    public int getQueueLength() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of tasks that have been rejected, including any
+     * rejected by the delegate.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of tasks that have started running.
+     */
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /**
+     * @return the number of tasks that have finished running.
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @param unit the time unit of the returned value.
+     * @return the total time started tasks spent between being submitted and
+     * starting to run.
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(totalWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the time unit of the returned value.
+     * @return the longest time a started task spent between being submitted
+     * and starting to run.
+     */
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the time unit of the returned value.
+     * @return the average time started tasks spent between being submitted
+     * and starting to run, or zero if no tasks have started.
+     */
+    public long getAverageWaitTime(TimeUnit unit) {
+        long started = startedCount.get();
+        if (started == 0) {
+            return 0;
+        }
+        return unit.convert(totalWaitNanos.get() / started, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Resets the rejected, started and completed counts and the wait times.
+     */
+    public void resetStats() {
+        rejectedCount.set(0);
+        startedCount.set(0);
+        completedCount.set(0);
+        totalWaitNanos.set(0);
+        maxWaitNanos.set(0);
+    }
+
+    /**
+     * A task along with the time it was submitted, that frees its slot when
+     * finished.
+     */
+    private class QueuedTask implements Runnable {
+
+        private final Runnable command;
+        private final long submittedNanos;
+
+        QueuedTask(Runnable command) {
+            this.command = command;
+            this.submittedNanos = System.nanoTime();
+        }
+
+        void cancel() {
+            if (command instanceof Future) {
+                ((Future<?>) command).cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            long waitNanos = System.nanoTime() - submittedNanos;
+            startedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            Thread current = Thread.currentThread();
+            runningThreads.add(current);
+            try {
+                command.run();
+            } finally {
+                runningThreads.remove(current);
+                completedCount.incrementAndGet();
+                taskFinished();
+            }
+        }
+    }
+}
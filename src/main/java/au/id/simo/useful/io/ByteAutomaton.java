@@ -0,0 +1,149 @@
+package au.id.simo.useful.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * An Aho-Corasick automaton over bytes, for finding many patterns in a single
+ * pass.
+ * <p>
+ * Each byte moves the automaton from one state to the next with a single
+ * table lookup, regardless of the number of patterns. A state's depth is the
+ * number of most recent bytes that are a prefix of some pattern, so bytes
+ * before them can never be part of a match.
+ * <p>
+ * Instances are immutable, so can be shared between threads.
+ */
+final class ByteAutomaton {
+
+    static final int START = 0;
+    private static final int NONE = -1;
+
+    private final int[] transitions;
+    private final int[] depth;
+    /**
+     * The index of the longest pattern ending at each state, or NONE.
+     */
+    private final int[] output;
+    private final int maxPatternLength;
+
+    /**
+     * Constructor.
+     *
+     * @param patterns the patterns to find. If the same bytes are provided
+     * more than once, the first is reported.
+     * @throws IllegalArgumentException if there are no patterns, or any
+     * pattern is empty.
+     */
+    ByteAutomaton(List<byte[]> patterns) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("At least one pattern is required");
+        }
+        // build the trie, with NONE for missing transitions
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(newRow());
+        depths.add(0);
+        outputs.add(NONE);
+        int maxLength = 0;
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Patterns cannot be empty");
+            }
+            maxLength = Math.max(maxLength, pattern.length);
+            int state = START;
+            for (byte b : pattern) {
+                int next = trie.get(state)[b & 0xFF];
+                if (next == NONE) {
+                    next = trie.size();
+                    trie.add(newRow());
+                    depths.add(depths.get(state) + 1);
+                    outputs.add(NONE);
+                    trie.get(state)[b & 0xFF] = next;
+                }
+                state = next;
+            }
+            if (outputs.get(state) == NONE) {
+                outputs.set(state, p);
+            }
+        }
+        int stateCount = trie.size();
+        this.transitions = new int[stateCount * 256];
+        this.depth = new int[stateCount];
+        this.output = new int[stateCount];
+        this.maxPatternLength = maxLength;
+        for (int s = 0; s < stateCount; s++) {
+            depth[s] = depths.get(s);
+            output[s] = outputs.get(s);
+        }
+        // breadth first, so each state's failure state is complete before it
+        int[] failure = new int[stateCount];
+        Deque<Integer> queue = new ArrayDeque<>();
+        int[] root = trie.get(START);
+        for (int c = 0; c < 256; c++) {
+            int next = root[c];
+            if (next == NONE) {
+                transitions[c] = START;
+            } else {
+                transitions[c] = next;
+                failure[next] = START;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = failure[state];
+            if (output[state] == NONE) {
+                // a shorter pattern may end here as a suffix
+                output[state] = output[fail];
+            }
+            int[] row = trie.get(state);
+            int base = state * 256;
+            for (int c = 0; c < 256; c++) {
+                int next = row[c];
+                if (next == NONE) {
+                    transitions[base + c] = transitions[fail * 256 + c];
+                } else {
+                    transitions[base + c] = next;
+                    failure[next] = transitions[fail * 256 + c];
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[256];
+        Arrays.fill(row, NONE);
+        return row;
+    }
+
+    int next(int state, byte b) {
+        return transitions[state * 256 + (b & 0xFF)];
+    }
+
+    /**
+     * @return the number of most recent bytes that may still be part of a
+     * match.
+     */
+    int depth(int state) {
+        return depth[state];
+    }
+
+    /**
+     * @return the index of the longest pattern ending at this state, or -1 if
+     * none do.
+     */
+    int match(int state) {
+        return output[state];
+    }
+
+    int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+}
@@ -2,6 +2,7 @@ package au.id.simo.useful.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Objects;
 
 import au.id.simo.useful.CheckUtil;
@@ -198,6 +199,32 @@ public interface ByteBundle extends Resource {
         };
     }
 
+    /**
+     * Creates an OutputStream that appends all bytes written to it to this
+     * ByteBundle.
+     * <p>
+     * Allows a {@link Generator} to write directly into a ByteBundle, without
+     * first buffering the bytes elsewhere.
+     *
+     * @return an OutputStream appending to this ByteBundle.
+     */
+    default OutputStream outputStream() {
+        return new OutputStream() {
+            private final byte[] singleByteBuf = new byte[1];
+
+            @Override
+            public void write(int b) {
+                singleByteBuf[0] = (byte) b;
+                append(singleByteBuf, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                append(b, off, len);
+            }
+        };
+    }
+
     default byte[] getBytes() {
         byte[] bytes = new byte[size()];
         copyOut(bytes);
@@ -1,20 +1,51 @@
 package au.id.simo.useful.io;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Turns an OutputStream into an InputStream by writing it all into an in memory
  * cache, then providing an InputStream for that cached data.
  * <p>
  * The usual byte array size limitation of 2GB for the Generator output applies.
+ * <p>
+ * By default the Generator is only run once. A time to live can be set so the
+ * Generator is run again once the generated data is stale, optionally in the
+ * background on a provided Executor while the stale data continues to be
+ * served.
+ * <p>
+ * Generated data is held in memory for the life of this instance, unless
+ * memory sensitive mode is enabled. It is then only softly referenced, so the
+ * garbage collector can release it when memory is low, and the Generator is
+ * run again on the next read.
  */
 public class CachedGeneratorResource implements Resource {
 
+    /**
+     * The Generator output is written straight into segments of this size,
+     * avoiding the copies of growing and trimming a single array.
+     */
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    private final Clock clock;
     private final Generator generator;
-    private byte[] generatedData;
+    private final Object lock;
+    private final AtomicBoolean refreshing;
+    /**
+     * Only one of generated or softGenerated is set, depending on whether
+     * memory sensitive mode is enabled.
+     */
+    private volatile Generated generated;
+    private volatile SoftReference<Generated> softGenerated;
+    private volatile boolean memorySensitive;
+    private volatile Duration timeToLive;
+    private volatile Executor refreshExecutor;
 
     /**
      * Creates a new Resource that obtains its data from the provided
@@ -24,7 +55,81 @@ public class CachedGeneratorResource implements Resource {
      * implementation.
      */
     public CachedGeneratorResource(Generator generator) {
+        this(Clock.systemUTC(), generator);
+    }
+
+    /**
+     * Creates a new Resource that obtains its data from the provided
+     * Generator.
+     *
+     * @param clock the Clock used to expire generated data.
+     * @param generator Is used to generate the data that backs this resource
+     * implementation.
+     */
+    public CachedGeneratorResource(Clock clock, Generator generator) {
+        this.clock = clock;
         this.generator = generator;
+        this.lock = new Object();
+        this.refreshing = new AtomicBoolean();
+    }
+
+    /**
+     * Sets how long generated data is used before the Generator is run again.
+     *
+     * @param timeToLive how long generated data is used, or null to only run
+     * the Generator once.
+     * @return this instance, to enable method chaining.
+     */
+    public CachedGeneratorResource setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Sets the Executor used to run the Generator again when the generated
+     * data is stale.
+     * <p>
+     * When set, reads of stale data return the stale data immediately, while
+     * the Generator is run once on the Executor. Otherwise, the reader that
+     * finds the stale data runs the Generator.
+     *
+     * @param refreshExecutor the Executor to refresh stale data on, or null
+     * to refresh on the reading thread.
+     * @return this instance, to enable method chaining.
+     */
+    public CachedGeneratorResource setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        return this;
+    }
+
+    /**
+     * Sets whether generated data is only softly referenced, allowing the
+     * garbage collector to release it when memory is low. Released data is
+     * generated again on the next read.
+     *
+     * @param memorySensitive true to softly reference generated data.
+     * @return this instance, to enable method chaining.
+     */
+    public CachedGeneratorResource setMemorySensitive(boolean memorySensitive) {
+        synchronized (lock) {
+            this.memorySensitive = memorySensitive;
+            Generated current = current();
+            if (current != null) {
+                store(current);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Releases the generated data, so the Generator is run again on the next
+     * read.
+     */
+    public void clearCache() {
+        synchronized (lock) {
+            generated = null;
+            softGenerated = null;
+        }
     }
 
     /**
@@ -32,18 +137,114 @@ public class CachedGeneratorResource implements Resource {
      * done so already, before making the buffer available for reading via a new
      * InputStream.
      * <p>
-     * The generator is only run once.
+     * The generator is only run again once the generated data is stale.
      *
      * @return An InputStream to read the in memory cache.
-     * @throws IOException Will never be thrown for this implementation.
+     * @throws IOException if the Generator throws an exception.
      */
     @Override
     public InputStream inputStream() throws IOException {
-        if (generatedData == null) {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            generator.writeTo(bout);
-            generatedData = bout.toByteArray();
+        Generated current = current();
+        if (current != null && !isExpired(current)) {
+            return current.data.inputStream();
+        }
+        Executor executor = refreshExecutor;
+        if (current != null && executor != null) {
+            refreshInBackground(executor);
+            return current.data.inputStream();
+        }
+        synchronized (lock) {
+            // another thread may have generated the data while waiting.
+            current = current();
+            if (current == null || isExpired(current)) {
+                current = generate();
+            }
+        }
+        return current.data.inputStream();
+    }
+
+    /**
+     * @return the generated data, or null if not generated yet or released.
+     */
+    private Generated current() {
+        Generated current = generated;
+        if (current != null) {
+            return current;
+        }
+        SoftReference<Generated> ref = softGenerated;
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void store(Generated current) {
+        if (memorySensitive) {
+            softGenerated = new SoftReference<>(current);
+            generated = null;
+        } else {
+            generated = current;
+            softGenerated = null;
+        }
+    }
+
+    private boolean isExpired(Generated current) {
+        return current.expiry != null && !clock.instant().isBefore(current.expiry);
+    }
+
+    /**
+     * Runs the Generator and stores its output. Must be called while holding
+     * the lock.
+     */
+    private Generated generate() throws IOException {
+        ByteBundle data = new SegmentByteBundle(SEGMENT_SIZE);
+        generator.writeTo(data.outputStream());
+        Duration ttl = timeToLive;
+        Instant expiry = ttl == null ? null : clock.instant().plus(ttl);
+        Generated current = new Generated(data, expiry);
+        store(current);
+        return current;
+    }
+
+    private void refreshInBackground(Executor executor) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    synchronized (lock) {
+                        Generated current = current();
+                        if (current == null || isExpired(current)) {
+                            generate();
+                        }
+                    }
+                } catch (IOException ex) {
+                    // keep serving the stale data, try again on the next read.
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException ex) {
+            // such as rejected by the Executor, try again on the next read.
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Generated data along with when it becomes stale.
+     */
+    private static final class Generated {
+
+        private final ByteBundle data;
+        /**
+         * Null if the data never becomes stale.
+         */
+        private final Instant expiry;
+
+        Generated(ByteBundle data, Instant expiry) {
+            this.data = data;
+            this.expiry = expiry;
         }
-        return new ByteArrayInputStream(generatedData);
     }
 }
@@ -1,8 +1,20 @@
 package au.id.simo.useful.io;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Caches the data read from the provided resource to speed up subsequent reads.
@@ -10,62 +22,569 @@ import java.io.InputStream;
  * Cache size is not allocated up front. If the cache size is exceeded on the
  * first read then caching is disabled and will not be used for subsequent reads.
  * Instead, the underlying Resource will be read again.
+ * <p>
+ * When several threads request an InputStream before the first read has
+ * finished recording, only the first reads the underlying Resource. The
+ * others follow the recording as it is made, and are counted as cache hits.
+ * If the recording is abandoned, such as by the first InputStream being
+ * closed early or the cache size being exceeded, any followers continue by
+ * reading the underlying Resource themselves. Followers also do so when the
+ * recording makes no progress within the follow timeout, or when only their
+ * own thread could advance it, such as when one thread opens two streams and
+ * reads the second first.
+ * <p>
+ * By default cached data is used until {@link #clearCache()} is called. A
+ * time to live can be set so that stale data is revalidated or read again,
+ * optionally in the background on a provided Executor while the stale data
+ * continues to be served.
+ * <p>
+ * Each instance caches independently, see {@link ResourceCache} to cache many
+ * Resources within a shared memory budget.
  */
 public class CachedResource extends FilterResource {
 
+    /**
+     * The default time a follower waits for more bytes to be recorded.
+     */
+    public static final Duration DEFAULT_FOLLOW_TIMEOUT = Duration.ofSeconds(5);
+
+    private final Clock clock;
     private final int maxCacheSize;
-    
-    private byte[] buffer;
-    private boolean limitExceeded;
-    private long cacheHits;
-    private long cacheMisses;
+
+    private final Object lock;
+    private final AtomicReference<Entry> entry;
+    private volatile boolean limitExceeded;
+    /**
+     * The recording currently being made from the underlying Resource, guarded
+     * by lock.
+     */
+    private Recording recording;
+    private final AtomicBoolean refreshing;
+    private volatile Duration timeToLive;
+    private volatile Executor refreshExecutor;
+    private volatile long followTimeoutNanos = DEFAULT_FOLLOW_TIMEOUT.toNanos();
+    private final AtomicLong cacheHits;
+    private final AtomicLong cacheMisses;
 
     public CachedResource(Resource resource) {
         this(resource, Integer.MAX_VALUE - 8);
     }
 
     public CachedResource(Resource resource, int maxCacheSize) {
+        this(Clock.systemUTC(), resource, maxCacheSize);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param clock the Clock used to expire cached data.
+     * @param resource the Resource to cache.
+     * @param maxCacheSize the maximum number of bytes to cache.
+     */
+    public CachedResource(Clock clock, Resource resource, int maxCacheSize) {
         super(resource);
+        this.clock = clock;
         this.maxCacheSize = maxCacheSize;
+        lock = new Object();
+        entry = new AtomicReference<>();
         limitExceeded = false;
+        refreshing = new AtomicBoolean();
+        cacheHits = new AtomicLong();
+        cacheMisses = new AtomicLong();
     }
-    
+
+    /**
+     * Sets how long cached data is used before it is considered stale.
+     * <p>
+     * Stale data of a {@link FileResource} is revalidated by comparing the
+     * last modified time and size of the file to when it was cached, and is
+     * only read again if either has changed. Stale data of any other
+     * Resource is always read again.
+     *
+     * @param timeToLive how long cached data is used, or null to use it until
+     * {@link #clearCache()} is called.
+     * @return this instance, to enable method chaining.
+     */
+    public CachedResource setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+        return this;
+    }
+
+    /**
+     * Sets the Executor used to refresh stale data in the background.
+     * <p>
+     * When set, reads of stale data return the stale data immediately, while
+     * a single refresh is run on the Executor. Otherwise, stale data is
+     * refreshed by the reader that finds it.
+     *
+     * @param refreshExecutor the Executor to refresh stale data on, or null
+     * to refresh on the reading thread.
+     * @return this instance, to enable method chaining.
+     */
+    public CachedResource setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+        return this;
+    }
+
+    /**
+     * Sets how long an InputStream following a recording waits for more bytes
+     * to be recorded, before reading the underlying Resource itself. Defaults
+     * to {@link #DEFAULT_FOLLOW_TIMEOUT}.
+     *
+     * @param followTimeout the maximum time to wait for each read.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if followTimeout is negative.
+     */
+    public CachedResource setFollowTimeout(Duration followTimeout) {
+        if (followTimeout.isNegative()) {
+            throw new IllegalArgumentException("followTimeout cannot be negative");
+        }
+        this.followTimeoutNanos = followTimeout.toNanos();
+        return this;
+    }
+
     public long cacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
-    
+
     public long cacheMisses() {
-        return cacheMisses;
+        return cacheMisses.get();
     }
-    
+
     public void resetStats() {
-        cacheHits = 0;
-        cacheMisses = 0;
+        cacheHits.set(0);
+        cacheMisses.set(0);
     }
 
     @Override
     public InputStream inputStream() throws IOException {
         if (limitExceeded) {
-            cacheMisses++;
+            cacheMisses.incrementAndGet();
             return super.inputStream();
         }
-        if (buffer == null) {
-            cacheMisses++;
-            InputStream in = super.inputStream();
-            RecorderInputStream rin = new RecorderInputStream(in, maxCacheSize);
-            rin.onEndStream(bytes -> {
-                limitExceeded = rin.isExceededBuffer();
-                if (!limitExceeded) {
-                    buffer = bytes;
+        Entry cached = entry.get();
+        if (cached != null) {
+            if (!cached.isExpired(clock)) {
+                cacheHits.incrementAndGet();
+                return new ByteArrayInputStream(cached.data);
+            }
+            Executor executor = refreshExecutor;
+            if (executor != null) {
+                refreshInBackground(cached, executor);
+                cacheHits.incrementAndGet();
+                return new ByteArrayInputStream(cached.data);
+            }
+            if (revalidate(cached)) {
+                cacheHits.incrementAndGet();
+                return new ByteArrayInputStream(cached.data);
+            }
+        }
+        Recording rec;
+        synchronized (lock) {
+            // recheck, as a recording may have finished while waiting.
+            cached = entry.get();
+            if (cached != null && !cached.isExpired(clock)) {
+                cacheHits.incrementAndGet();
+                return new ByteArrayInputStream(cached.data);
+            }
+            if (recording != null) {
+                cacheHits.incrementAndGet();
+                return new FollowerInputStream(recording);
+            }
+            cacheMisses.incrementAndGet();
+            if (limitExceeded) {
+                return super.inputStream();
+            }
+            rec = new Recording(maxCacheSize);
+            recording = rec;
+        }
+        try {
+            rec.version = currentVersion();
+            return new RecordingInputStream(super.inputStream(), rec);
+        } catch (IOException | RuntimeException ex) {
+            abandon(rec, false);
+            throw ex;
+        }
+    }
+
+    public void clearCache() {
+        synchronized (lock) {
+            entry.set(null);
+            // detach any recording in progress, so it isn't stored once
+            // finished.
+            recording = null;
+        }
+    }
+
+    /**
+     * Obtains the version of the underlying Resource, used to tell if stale
+     * data has changed.
+     *
+     * @return the last modified time and size of a FileResource, otherwise
+     * null as the version is unknown.
+     */
+    private Object currentVersion() throws IOException {
+        if (resource instanceof FileResource) {
+            FileResource file = (FileResource) resource;
+            return Arrays.asList(file.lastModified(), file.size());
+        }
+        return null;
+    }
+
+    /**
+     * Renews the stale entry if the underlying Resource has not changed.
+     *
+     * @return true if the entry was renewed.
+     */
+    private boolean revalidate(Entry stale) {
+        if (stale.version == null) {
+            return false;
+        }
+        try {
+            if (!stale.version.equals(currentVersion())) {
+                return false;
+            }
+        } catch (IOException ex) {
+            // such as the file being deleted, so read it again to report
+            // the failure to the reader.
+            return false;
+        }
+        entry.compareAndSet(stale, new Entry(stale.data, stale.version, expiry()));
+        return true;
+    }
+
+    private void refreshInBackground(Entry stale, Executor executor) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh(stale);
+                } finally {
+                    refreshing.set(false);
                 }
             });
-            return rin;
+        } catch (RuntimeException ex) {
+            // such as rejected by the Executor, try again on the next read.
+            refreshing.set(false);
         }
-        cacheHits++;
-        return new ByteArrayInputStream(buffer);
     }
 
-    public void clearCache() {
-        buffer = null;
+    /**
+     * Replaces the stale entry with freshly read data, unless it is still
+     * valid. If reading fails the stale data remains in use, and the refresh
+     * is attempted again on the next read.
+     */
+    private void refresh(Entry stale) {
+        if (revalidate(stale)) {
+            return;
+        }
+        try {
+            Object version = currentVersion();
+            RecorderInputStream rin = new RecorderInputStream(super.inputStream(), maxCacheSize);
+            try (InputStream in = rin) {
+                IOUtils.drain(in);
+            }
+            synchronized (lock) {
+                if (entry.get() != stale) {
+                    // cleared or replaced while refreshing
+                    return;
+                }
+                if (rin.isExceededBuffer()) {
+                    limitExceeded = true;
+                    entry.set(null);
+                } else {
+                    entry.set(new Entry(rin.getReadByteArray(), version, expiry()));
+                }
+            }
+        } catch (IOException ex) {
+            // keep serving the stale data
+        }
+    }
+
+    private Instant expiry() {
+        Duration ttl = timeToLive;
+        if (ttl == null) {
+            return null;
+        }
+        return clock.instant().plus(ttl);
+    }
+
+    private void finish(Recording rec) {
+        byte[] bytes = rec.finish();
+        synchronized (lock) {
+            if (recording == rec) {
+                entry.set(new Entry(bytes, rec.version, expiry()));
+                recording = null;
+            }
+        }
+    }
+
+    private void abandon(Recording rec, boolean exceeded) {
+        rec.abandon();
+        synchronized (lock) {
+            if (recording == rec) {
+                recording = null;
+                if (exceeded) {
+                    limitExceeded = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached data, along with the version of the underlying Resource it was
+     * read from and when it becomes stale.
+     */
+    private static final class Entry {
+
+        private final byte[] data;
+        private final Object version;
+        /**
+         * Null if the data never becomes stale.
+         */
+        private final Instant expiry;
+
+        Entry(byte[] data, Object version, Instant expiry) {
+            this.data = data;
+            this.version = version;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(Clock clock) {
+            return expiry != null && !clock.instant().isBefore(expiry);
+        }
+    }
+
+    /**
+     * The bytes read so far from the underlying Resource, shared between the
+     * thread reading them and any threads following along.
+     */
+    private static class Recording {
+
+        /**
+         * Result of a read that cannot continue from the recording.
+         */
+        static final int UNAVAILABLE = -2;
+
+        private final int maxSize;
+        /**
+         * The thread that started the recording, which a follower on the same
+         * thread must not wait for.
+         */
+        private final Thread owner;
+        /**
+         * The version of the underlying Resource when recording started.
+         */
+        private volatile Object version;
+        private byte[] data;
+        private int size;
+        private boolean finished;
+        private boolean abandoned;
+
+        Recording(int maxSize) {
+            this.maxSize = maxSize;
+            this.owner = Thread.currentThread();
+            this.data = new byte[Math.min(maxSize, IOUtils.DEFAULT_BUFFER_SIZE)];
+        }
+
+        /**
+         * @return false if the bytes would exceed the maximum size, in which
+         * case nothing is recorded.
+         */
+        synchronized boolean append(byte[] b, int off, int len) {
+            if (len > maxSize - size) {
+                return false;
+            }
+            if (size + len > data.length) {
+                long newLength = Math.max((long) data.length * 2, size + len);
+                data = Arrays.copyOf(data, (int) Math.min(newLength, maxSize));
+            }
+            System.arraycopy(b, off, data, size, len);
+            size += len;
+            notifyAll();
+            return true;
+        }
+
+        synchronized byte[] finish() {
+            finished = true;
+            notifyAll();
+            return Arrays.copyOf(data, size);
+        }
+
+        synchronized void abandon() {
+            abandoned = true;
+            notifyAll();
+        }
+
+        /**
+         * Copies recorded bytes from the provided position, waiting up to the
+         * timeout for more to be recorded if required.
+         *
+         * @return the number of bytes copied, -1 if the recording finished
+         * before the position, or {@link #UNAVAILABLE} if the recording was
+         * abandoned before the position, the timeout elapsed, or only the
+         * calling thread could advance the recording.
+         */
+        synchronized int read(int pos, byte[] b, int off, int len, long timeoutNanos) throws InterruptedIOException {
+            if (pos >= size && !finished && !abandoned && owner == Thread.currentThread()) {
+                // waiting would never end, as this thread records.
+                return UNAVAILABLE;
+            }
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (pos >= size && !finished && !abandoned) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return UNAVAILABLE;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting");
+                    ioe.initCause(ex);
+                    throw ioe;
+                }
+            }
+            if (pos < size) {
+                int count = Math.min(len, size - pos);
+                System.arraycopy(data, pos, b, off, count);
+                return count;
+            }
+            return finished ? -1 : UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Reads the underlying Resource, recording the bytes read.
+     */
+    private class RecordingInputStream extends FilterInputStream {
+
+        private final Recording rec;
+        private final byte[] single = new byte[1];
+        private boolean active;
+
+        RecordingInputStream(InputStream in, Recording rec) {
+            super(in);
+            this.rec = rec;
+            this.active = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int readCount = read(single, 0, 1);
+            if (readCount == -1) {
+                return -1;
+            }
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int readCount;
+            try {
+                readCount = super.read(b, off, len);
+            } catch (IOException | RuntimeException ex) {
+                stopRecording(false);
+                throw ex;
+            }
+            if (!active) {
+                return readCount;
+            }
+            if (readCount == -1) {
+                active = false;
+                finish(rec);
+            } else if (!rec.append(b, off, readCount)) {
+                stopRecording(true);
+            }
+            return readCount;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // read rather than skip, so skipped bytes are recorded.
+            return IOUtils.skipFully(this, n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void stopRecording(boolean exceeded) {
+            if (active) {
+                active = false;
+                abandon(rec, exceeded);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closed before the end of stream, so the recording is incomplete.
+            stopRecording(false);
+            super.close();
+        }
+    }
+
+    /**
+     * Reads the bytes of a Recording as they are recorded, reading the
+     * underlying Resource instead if the recording is abandoned.
+     */
+    private class FollowerInputStream extends InputStream {
+
+        private final Recording rec;
+        private final byte[] single = new byte[1];
+        private int position;
+        private InputStream fallback;
+        private boolean closed;
+
+        FollowerInputStream(Recording rec) {
+            this.rec = rec;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int readCount = read(single, 0, 1);
+            if (readCount == -1) {
+                return -1;
+            }
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (fallback != null) {
+                return fallback.read(b, off, len);
+            }
+            int readCount = rec.read(position, b, off, len, followTimeoutNanos);
+            if (readCount > 0) {
+                position += readCount;
+                return readCount;
+            }
+            if (readCount == -1) {
+                return -1;
+            }
+            // unavailable, so continue from the underlying Resource.
+            fallback = resource.inputStream();
+            if (IOUtils.skipFully(fallback, position) < position) {
+                throw new EOFException("Resource is now shorter than the bytes already read");
+            }
+            return fallback.read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            if (fallback != null) {
+                fallback.close();
+            }
+        }
     }
 }
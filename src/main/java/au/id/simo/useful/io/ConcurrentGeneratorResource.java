@@ -1,8 +1,10 @@
 package au.id.simo.useful.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.concurrent.*;
 
@@ -16,6 +18,19 @@ import java.util.concurrent.*;
  * <p>
  * {@link Executors#newCachedThreadPool() } is the default executor service used
  * for generating resources when no ExecutorService is passed in a constructor.
+ * <p>
+ * By default, reads of the returned {@link InputStream} wait indefinitely for
+ * the Generator. To ensure stuck Generators are reclaimed promptly, a read
+ * timeout can be set to limit how long a single read waits, and a generation
+ * timeout can be set to limit how long the Generator has to write all of its
+ * output. When either is exceeded, the read fails with an
+ * {@link java.io.InterruptedIOException} and the Generator is canceled.
+ * <p>
+ * Canceled Generators have their thread interrupted, and any write to the
+ * provided OutputStream fails once the returned InputStream is closed or the
+ * generation timeout is exceeded. Generators that spend a long time between
+ * writes should check {@link Thread#isInterrupted()} to notice they have been
+ * canceled.
  */
 public class ConcurrentGeneratorResource implements Resource {
 
@@ -47,10 +62,21 @@ public class ConcurrentGeneratorResource implements Resource {
         return old;
     }
 
+    /**
+     * Long enough for a finishing Generator to report its exception, short
+     * enough that a Generator which ignores its closed OutputStream does not
+     * hold up the consumer for long.
+     */
+    static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 1000;
+
     private final ExecutorService service;
     private final Generator generator;
     private final int bufferSize;
 
+    private volatile long readTimeoutNanos;
+    private volatile long generationTimeoutNanos;
+    private volatile long closeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CLOSE_TIMEOUT_MILLIS);
+
     /**
      * Constructor.
      *
@@ -99,6 +125,63 @@ public class ConcurrentGeneratorResource implements Resource {
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * Sets the maximum time a single read of created InputStreams will wait
+     * for the Generator to write more bytes, before the read fails and the
+     * Generator is canceled.
+     *
+     * @param timeout the maximum time to wait, zero to wait indefinitely.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if timeout is negative.
+     */
+    public ConcurrentGeneratorResource setReadTimeout(long timeout, TimeUnit unit) {
+        readTimeoutNanos = checkTimeout(timeout, unit);
+        return this;
+    }
+
+    /**
+     * Sets the maximum time the Generator has to write all of its output, from
+     * when an InputStream is requested. Once exceeded, reads of the
+     * InputStream that would wait for the Generator fail and the Generator is
+     * canceled.
+     *
+     * @param timeout the maximum time to generate, zero for no limit.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if timeout is negative.
+     */
+    public ConcurrentGeneratorResource setGenerationTimeout(long timeout, TimeUnit unit) {
+        generationTimeoutNanos = checkTimeout(timeout, unit);
+        return this;
+    }
+
+    /**
+     * Sets the time closing an InputStream waits for an unfinished Generator
+     * to complete before canceling it. Defaults to 1 second.
+     * <p>
+     * Closing the InputStream fails any current or future write by the
+     * Generator, so a Generator that is writing finishes well within this
+     * time, and any exception it threw is reported by the close. Failed
+     * writes caused by closing the InputStream early are not reported.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if timeout is negative.
+     */
+    public ConcurrentGeneratorResource setCloseTimeout(long timeout, TimeUnit unit) {
+        closeTimeoutNanos = checkTimeout(timeout, unit);
+        return this;
+    }
+
+    private static long checkTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        return unit.toNanos(timeout);
+    }
+
     /**
      * Runs the generation of the Generator on another thread.
      * <p>
@@ -109,26 +192,95 @@ public class ConcurrentGeneratorResource implements Resource {
      *
      * @return the stream of data generated from the Generator object.
      * @throws IOException if there is an issue in connecting the
-     * PipedOutputStream with a PipedInputStream, or if the Generator throws an
-     * exception
+     * PipedOutputStream with a PipedInputStream, if the ExecutorService
+     * rejects the Generator, or if the Generator throws an exception
      * @see Generator#writeTo(java.io.OutputStream)
      * @see ExecutorService
      */
     @Override
     public InputStream inputStream() throws IOException {
         PipeOutputStream out = new PipeOutputStream(bufferSize);
+        out.setReadTimeout(readTimeoutNanos, TimeUnit.NANOSECONDS);
+        if (generationTimeoutNanos > 0) {
+            out.setDeadline(generationTimeoutNanos, TimeUnit.NANOSECONDS);
+        }
         InputStream in = out.getInputStream();
+        Future<Object> future;
+        try {
+            future = service.submit(producer(generator, out));
+        } catch (RejectedExecutionException ex) {
+            // such as when an overloaded BoundedExecutorService refuses more
+            // Generators, so fail like any other unavailable Resource.
+            in.close();
+            throw new IOException("Generator rejected by ExecutorService", ex);
+        }
+        return new ConsumerInputStream(in, future, closeTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
 
-        // use a callable so exceptions can be thrown by the generator thread.
-        // Runnable.run() doesn't throw Exception.
-        Callable<Object> producer = () -> {
+    /**
+     * Creates the producer half of the producer/consumer thread pair, which
+     * writes the output of the Generator to the pipe and closes it.
+     * <p>
+     * A callable is used so exceptions can be thrown by the generator thread,
+     * as Runnable.run() doesn't throw Exception.
+     *
+     * @param generator the Generator to run.
+     * @param out the pipe the Generator writes to.
+     * @return a Callable that throws any exception thrown by the Generator,
+     * other than writes refused because the consumer closed the pipe early.
+     */
+    static Callable<Object> producer(Generator generator, PipeOutputStream out) {
+        return () -> {
             try (OutputStream localOut = out) {
                 generator.writeTo(localOut);
+            } catch (IOException ex) {
+                if (out.isWriteRefused()) {
+                    // the consumer closed the InputStream early, so has no
+                    // use for the rest of the output or this failure.
+                    return null;
+                }
+                throw ex;
             }
             return null;
         };
-        Future<Object> future = service.submit(producer);
-        return new ConsumerInputStream(in, future);
+    }
+
+    /**
+     * Runs the Generator on the provided Executor, writing directly to the
+     * provided OutputStream.
+     * <p>
+     * No pipe or consumer thread is needed, so only a single thread is used
+     * per transfer. The read and generation timeouts do not apply.
+     *
+     * @param out the generated bytes are written to this OutputStream.
+     * @param executor the Executor that runs the Generator.
+     * @return a future of the number of bytes written to the provided
+     * OutputStream.
+     */
+    @Override
+    public CompletableFuture<Long> copyToAsync(OutputStream out, Executor executor) {
+        return IOUtils.callAsync(() -> {
+            CountingOutputStream countingOut = new CountingOutputStream(out);
+            generator.writeTo(countingOut);
+            countingOut.flush();
+            return countingOut.getByteCount();
+        }, executor);
+    }
+
+    /**
+     * Runs the Generator on the provided Executor, collecting the generated
+     * bytes in memory.
+     *
+     * @param executor the Executor that runs the Generator.
+     * @return a future of all the generated bytes.
+     */
+    @Override
+    public CompletableFuture<byte[]> readAllAsync(Executor executor) {
+        return IOUtils.callAsync(() -> {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            generator.writeTo(bout);
+            return bout.toByteArray();
+        }, executor);
     }
 
     /**
@@ -145,14 +297,34 @@ public class ConcurrentGeneratorResource implements Resource {
      * caught or wrapped in an IOException.
      */
     protected static void closeGenerator(Future<Object> future) throws IOException {
+        closeGenerator(future, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Allows the caller to close the Generator running in another thread,
+     * waiting up to the provided timeout for it to finish before canceling it.
+     * <p>
+     * Useful when the consumer has already reached the end of the stream, so
+     * the Generator is known to be finishing and any exception it threw must
+     * not be missed.
+     *
+     * @param future Represents the Generator running in another thread. Cannot
+     * be null.
+     * @param timeout the maximum time to wait for the Generator to finish.
+     * @param unit the time unit of the timeout argument.
+     * @throws IOException If Generator threw an IOException, or any Throwable
+     * that is not a RuntimeException, which is wrapped in an IOException.
+     * @see #closeGenerator(java.util.concurrent.Future)
+     */
+    protected static void closeGenerator(Future<Object> future, long timeout, TimeUnit unit) throws IOException {
         try {
             // throws any exceptions in the consumer thread that were thrown
             // in the generator thread.
-            future.get(1, TimeUnit.MILLISECONDS);
+            future.get(timeout, unit);
         } catch (InterruptedException ex) {
             // this only occurs when the consumer thread is interrupted while
-            // waiting <1ms for the future to complete. It's a very small window
-            // but still possible.
+            // waiting for the future to complete. When waiting only 1ms it's a
+            // very small window but still possible.
             
             // ensure interrupt flag is reset, but otherwise ignore.
             Thread.currentThread().interrupt();
@@ -202,21 +374,75 @@ public class ConcurrentGeneratorResource implements Resource {
      * <p>
      * This ensures any exceptions thrown in the Generators Thread are exposed to
      * the caller thread that is reading the InputStream.
+     * <p>
+     * If a read times out, the Generator is canceled and no exception is thrown
+     * on close. A read interrupted by an interrupt of the consumer thread is
+     * not a time out, so the Generator's exception is still thrown on close.
      */
     protected static class ConsumerInputStream extends FilterInputStream {
         private final Future<Object> generatorFuture;
-        
+        private final long closeTimeoutNanos;
+
+        private boolean timedOut;
+
         public ConsumerInputStream(InputStream in, Future<Object> future) {
+            this(in, future, DEFAULT_CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param in the InputStream the Generator output is read from.
+         * @param future Represents the Generator running in another thread.
+         * @param closeTimeout the time closing this stream waits for an
+         * unfinished Generator to complete before canceling it.
+         * @param closeTimeoutUnit the time unit of the closeTimeout argument.
+         */
+        public ConsumerInputStream(InputStream in, Future<Object> future, long closeTimeout, TimeUnit closeTimeoutUnit) {
             super(in);
             this.generatorFuture = future;
+            this.closeTimeoutNanos = closeTimeoutUnit.toNanos(closeTimeout);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (InterruptedIOException ex) {
+                cancelOnTimeout();
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (InterruptedIOException ex) {
+                cancelOnTimeout();
+                throw ex;
+            }
+        }
+
+        private void cancelOnTimeout() {
+            // PipeOutputStream keeps the interrupt flag set when the wait
+            // was interrupted rather than timed out.
+            if (!Thread.currentThread().isInterrupted()) {
+                timedOut = true;
+                generatorFuture.cancel(true);
+            }
         }
 
         @Override
         public void close() throws IOException {
-            closeGenerator(generatorFuture);
+            // close first, so a Generator blocked writing to the full pipe
+            // fails promptly instead of waiting out the close timeout.
             super.close();
+            if (!timedOut) {
+                closeGenerator(generatorFuture, closeTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
         }
-        
+
         protected Future<Object> getFuture() {
             return generatorFuture;
         }
@@ -0,0 +1,372 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores each unique payload once, keyed by the digest of its content.
+ * <p>
+ * Payloads are hashed as they are added, using {@link HashInputStream}. When
+ * an identical payload is already stored, the new copy is discarded and the
+ * existing one is shared. Each add returns a lightweight {@link ContentRef}
+ * Resource referencing the shared payload, which is removed once every
+ * ContentRef to it has been closed.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * try (ContentStore store = new ContentStore(tempDir)) {
+ *     ContentRef logo = store.add(new FileResource("logo.png"));
+ *     session1.register("images/logo.png", logo);
+ *     session2.register("logo.png", store.add(new FileResource("copy-of-logo.png")));
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * Payloads are held in memory, or when a directory is provided, in files
+ * named by their digest within that directory. Closing the store removes all
+ * payloads regardless of any open ContentRefs.
+ * <p>
+ * All methods are thread safe.
+ */
+public class ContentStore implements Closeable {
+
+    /**
+     * The message digest algorithm used when one is not provided.
+     */
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    private static final String STORE_CLOSED_MSG = "ContentStore is closed";
+
+    private final String algorithm;
+    /**
+     * Null when payloads are held in memory.
+     */
+    private final Path directory;
+    private final Map<String, Blob> blobs;
+    private long storedBytes;
+    private boolean closed;
+
+    /**
+     * Creates a store holding payloads in memory.
+     */
+    public ContentStore() {
+        this.algorithm = DEFAULT_ALGORITHM;
+        this.directory = null;
+        this.blobs = new HashMap<>();
+    }
+
+    /**
+     * Creates a store holding payloads in files within the provided
+     * directory.
+     *
+     * @param directory an existing directory to store payloads in.
+     */
+    public ContentStore(Path directory) {
+        this.algorithm = DEFAULT_ALGORITHM;
+        this.directory = directory;
+        this.blobs = new HashMap<>();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param algorithm the {@link MessageDigest} algorithm used to identify
+     * payloads.
+     * @param directory an existing directory to store payloads in, or null to
+     * hold payloads in memory.
+     * @throws NoSuchAlgorithmException if the algorithm is not available.
+     */
+    public ContentStore(String algorithm, Path directory) throws NoSuchAlgorithmException {
+        // fail early on an unknown algorithm, rather than on the first add.
+        MessageDigests.newInstance(algorithm);
+        this.algorithm = algorithm;
+        this.directory = directory;
+        this.blobs = new HashMap<>();
+    }
+
+    /**
+     * Adds the content of the provided Resource to this store.
+     *
+     * @param resource the Resource to read the payload from.
+     * @return a reference to the stored payload, to be closed when no longer
+     * required.
+     * @throws IOException if there is an issue reading the Resource or storing
+     * its content, or if this store is closed.
+     */
+    public ContentRef add(Resource resource) throws IOException {
+        try (InputStream in = resource.inputStream()) {
+            return add(in);
+        }
+    }
+
+    /**
+     * Adds the remaining content of the provided InputStream to this store.
+     * The InputStream is not closed.
+     *
+     * @param in the InputStream to read the payload from.
+     * @return a reference to the stored payload, to be closed when no longer
+     * required.
+     * @throws IOException if there is an issue reading the InputStream or
+     * storing its content, or if this store is closed.
+     */
+    public ContentRef add(InputStream in) throws IOException {
+        checkClosed();
+        HashInputStream hashIn = new HashInputStream(in, newDigest());
+        if (directory == null) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            IOUtils.copy(hashIn, bout);
+            return addBlob(new Blob(hashIn.getHashString(), bout.toByteArray(), null));
+        }
+        Path tempFile = Files.createTempFile(directory, "ingest-", ".tmp");
+        try {
+            long size;
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                size = IOUtils.copy(hashIn, out);
+            }
+            String digest = hashIn.getHashString();
+            synchronized (this) {
+                checkClosed();
+                Blob existing = blobs.get(digest);
+                if (existing == null) {
+                    Path file = directory.resolve(digest);
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                    return addBlob(new Blob(digest, size, file));
+                }
+                return addBlob(existing);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Obtains another reference to an already stored payload.
+     *
+     * @param digest the hex encoded digest of the payload.
+     * @return a reference to the stored payload, to be closed when no longer
+     * required, or null if no payload with that digest is stored.
+     * @throws IOException if this store is closed.
+     */
+    public synchronized ContentRef get(String digest) throws IOException {
+        Blob blob = blobs.get(digest);
+        if (blob == null) {
+            checkClosed();
+            return null;
+        }
+        return addBlob(blob);
+    }
+
+    private MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigests.newInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            // already checked by the constructor
+            throw new IOException(ex);
+        }
+    }
+
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException(STORE_CLOSED_MSG);
+        }
+    }
+
+    /**
+     * Stores the blob if it is not already stored, and references it.
+     */
+    private synchronized ContentRef addBlob(Blob blob) throws IOException {
+        checkClosed();
+        Blob existing = blobs.get(blob.digest);
+        if (existing == null) {
+            blobs.put(blob.digest, blob);
+            storedBytes += blob.size;
+            existing = blob;
+        }
+        existing.refCount++;
+        return new ContentRef(existing);
+    }
+
+    private synchronized void release(Blob blob) throws IOException {
+        if (blobs.get(blob.digest) != blob) {
+            // already removed by closing the store
+            return;
+        }
+        blob.refCount--;
+        if (blob.refCount > 0) {
+            return;
+        }
+        blobs.remove(blob.digest);
+        storedBytes -= blob.size;
+        // while locked, as an add of the same content reuses the file name
+        blob.delete();
+    }
+
+    /**
+     * @return the number of unique payloads stored.
+     */
+    public synchronized int getPayloadCount() {
+        return blobs.size();
+    }
+
+    /**
+     * @return the number of bytes stored, counting each unique payload once.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @param digest the hex encoded digest of a payload.
+     * @return the number of open references to the payload, or zero if it is
+     * not stored.
+     */
+    public synchronized int getReferenceCount(String digest) {
+        Blob blob = blobs.get(digest);
+        return blob == null ? 0 : blob.refCount;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Removes all payloads. Any open ContentRefs can no longer be read.
+     *
+     * @throws IOException if there is an issue deleting payload files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException first = null;
+        for (Blob blob : blobs.values()) {
+            try {
+                blob.delete();
+            } catch (IOException ex) {
+                if (first == null) {
+                    first = ex;
+                } else {
+                    first.addSuppressed(ex);
+                }
+            }
+        }
+        blobs.clear();
+        storedBytes = 0;
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * A stored payload, held either in memory or in a file.
+     */
+    private static final class Blob {
+
+        private final String digest;
+        private final long size;
+        private final byte[] data;
+        private final Path file;
+        /**
+         * Guarded by the ContentStore lock.
+         */
+        private int refCount;
+        private volatile boolean deleted;
+
+        Blob(String digest, byte[] data, Path file) {
+            this.digest = digest;
+            this.size = data.length;
+            this.data = data;
+            this.file = file;
+        }
+
+        Blob(String digest, long size, Path file) {
+            this.digest = digest;
+            this.size = size;
+            this.data = null;
+            this.file = file;
+        }
+
+        InputStream inputStream() throws IOException {
+            if (deleted) {
+                throw new IOException(STORE_CLOSED_MSG);
+            }
+            if (data != null) {
+                return new ByteArrayInputStream(data);
+            }
+            return Files.newInputStream(file);
+        }
+
+        void delete() throws IOException {
+            deleted = true;
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * A Resource referencing a payload shared within a ContentStore.
+     * <p>
+     * Closing it releases the reference, the payload is removed from the store
+     * once all references to it are released. It cannot be read once closed.
+     */
+    public final class ContentRef implements Resource, Closeable {
+
+        private final Blob blob;
+        private final AtomicBoolean released;
+
+        private ContentRef(Blob blob) {
+            this.blob = blob;
+            this.released = new AtomicBoolean();
+        }
+
+        /**
+         * @return the hex encoded digest of the payload.
+         */
+        public String getDigest() {
+            return blob.digest;
+        }
+
+        /**
+         * @return the number of bytes in the payload.
+         */
+        public long size() {
+            return blob.size;
+        }
+
+        @Override
+        public InputStream inputStream() throws IOException {
+            if (released.get()) {
+                throw new IOException("ContentRef is closed");
+            }
+            return blob.inputStream();
+        }
+
+        /**
+         * Releases this reference to the payload. Only the first call has any
+         * effect.
+         *
+         * @throws IOException if there is an issue deleting the payload file.
+         */
+        @Override
+        public void close() throws IOException {
+            if (released.compareAndSet(false, true)) {
+                release(blob);
+            }
+        }
+    }
+}
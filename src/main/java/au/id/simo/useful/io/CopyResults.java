@@ -0,0 +1,140 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of copying many sources concurrently with
+ * {@link IOUtils#copyAll(List, java.util.concurrent.Executor, int)}.
+ * <p>
+ * Holds the outcome of each copy, in the order the copies were provided, along
+ * with totals across all of them.
+ */
+public final class CopyResults {
+
+    private final List<Result> results;
+    private final long elapsedNanos;
+
+    CopyResults(List<Result> results, long elapsedNanos) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the outcome of each copy, in the order the copies were
+     * provided.
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the number of bytes copied by all successful copies.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (Result result : results) {
+            total += result.getByteCount();
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of copies that completed without failure.
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (Result result : results) {
+            if (result.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the failures of any copies that failed, in the order the copies
+     * were provided.
+     */
+    public List<Exception> getFailures() {
+        List<Exception> failures = new ArrayList<>();
+        for (Result result : results) {
+            if (!result.isSuccess()) {
+                failures.add(result.getFailure());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @param unit the unit of the returned time.
+     * @return the wall clock time taken to run all copies.
+     */
+    public long getElapsedTime(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @throws IOException if any copy failed, with the first failure as the
+     * cause and any others suppressed.
+     */
+    public void throwIfFailed() throws IOException {
+        List<Exception> failures = getFailures();
+        if (failures.isEmpty()) {
+            return;
+        }
+        IOException ex = new IOException(
+                failures.size() + " of " + results.size() + " copies failed",
+                failures.get(0)
+        );
+        for (int i = 1; i < failures.size(); i++) {
+            ex.addSuppressed(failures.get(i));
+        }
+        throw ex;
+    }
+
+    /**
+     * The outcome of a single copy.
+     */
+    public static final class Result {
+
+        private final long byteCount;
+        private final Exception failure;
+        private final long elapsedNanos;
+
+        Result(long byteCount, Exception failure, long elapsedNanos) {
+            this.byteCount = byteCount;
+            this.failure = failure;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of bytes copied, zero if the copy failed.
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        /**
+         * @return why the copy failed, or null if it succeeded.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * @param unit the unit of the returned time.
+         * @return the time taken by the copy, zero if it was never started.
+         */
+        public long getElapsedTime(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -22,7 +22,9 @@ public class CountingOutputStream extends FilterOutputStream {
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        super.write(b, off, len);
+        // FilterOutputStream writes arrays one byte at a time via write(int),
+        // which would count every byte twice.
+        out.write(b, off, len);
         byteCount += len;
     }
 
@@ -4,98 +4,201 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import au.id.simo.useful.collections.ByteRingBuffer;
-
 /**
  * A pass through InputStream that can run MatchListeners when a specified
  * series of bytes is detected.
  * <p>
- * Detected bytes are discarded and not provided to the consumer of this stream.
+ * Detected bytes are discarded and not provided to the consumer of this stream,
+ * or replaced with the replacement bytes of the Match.
+ * <p>
+ * The underlying stream is read in blocks, which are scanned for the match
+ * bytes. Spans of bytes before a possible match are copied to the consumer in
+ * bulk. A match is only acted on once the consumer has read all the bytes
+ * before it.
  */
 public class DetectionInputStream extends FilterInputStream {
 
-    private static final int MIN_BUFFER_SIZE = 10;
+    /**
+     * The default number of bytes read from the underlying stream at a time.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
     /**
      * Match constant that will have no modifying behavior, and not match
      * anything.
      */
-    private static final Match NO_OP = new Match(new byte[0], bytes -> false);
+    private static final byte[] NO_BYTES = new byte[0];
+    private static final Match NO_OP = new Match(NO_BYTES, bytes -> false);
     private final Match match;
     
-    private final ByteRingBuffer buffer;
-    private final Latch inStatus;
+    private final byte[] buf;
+    /**
+     * The next byte to provide to the consumer.
+     */
+    private int pos;
+    /**
+     * Bytes from pos up to safeEnd are not part of any match, so can be
+     * provided to the consumer.
+     */
+    private int safeEnd;
+    /**
+     * The end of the bytes read from the underlying stream.
+     */
+    private int limit;
+    private boolean endOfStream;
+    /**
+     * Provided to the consumer before any more bytes from buf, null if none.
+     */
+    private byte[] replacement;
+    private int replacementPos;
 
     public DetectionInputStream(InputStream in) {
         this(in, null);
     }
     
     public DetectionInputStream(InputStream in, Match match) {
+        this(in, match, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param in the InputStream to read from.
+     * @param match the bytes to detect, and what to do when detected. May be
+     * null to detect nothing.
+     * @param blockSize the number of bytes to read from the underlying stream
+     * at a time. Increased to the length of the match bytes if smaller.
+     * @throws IllegalArgumentException if blockSize is not positive.
+     */
+    public DetectionInputStream(InputStream in, Match match, int blockSize) {
         super(in);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
         if (match == null) {
             this.match = NO_OP;
         } else {
             this.match = match;
         }
-        // ensure buffer is never zero
-        int maxBufferRequired = Math.max(MIN_BUFFER_SIZE, this.match.matchBytes.length);
-        this.buffer = new ByteRingBuffer(maxBufferRequired);
-        this.inStatus = new Latch();
+        this.buf = new byte[Math.max(blockSize, this.match.matchBytes.length)];
     }
 
+    /**
+     * Reads another block from the underlying stream, after any unread
+     * bytes.
+     */
     private void fillBuffer() throws IOException {
-        if(inStatus.isClosed()) {
-            // no more in the underlying input stream, no need to read anymore.
-            return;
+        if (pos == limit) {
+            pos = 0;
+            safeEnd = 0;
+            limit = 0;
+        } else if (limit == buf.length) {
+            // make room by moving the unread bytes to the start
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            safeEnd -= pos;
+            limit -= pos;
+            pos = 0;
+        }
+        int readCount = in.read(buf, limit, buf.length - limit);
+        if (readCount == -1) {
+            endOfStream = true;
+        } else {
+            limit += readCount;
         }
-        int byt = -2; // -2 is an arbitrary out-of-band init marker.
-        while (buffer.isNotFull() && (byt = in.read()) != -1) {
-            byte b = (byte) byt;
-            buffer.add(b);
+    }
+
+    /**
+     * Scans the unread bytes for the match bytes, running the OnMatch of any
+     * match found at the start of the unread bytes, until some bytes are
+     * known to not be part of a match.
+     *
+     * @return true if there are bytes that can be provided to the consumer,
+     * false if end of stream has been reached.
+     * @throws IOException if there is any error reading the underlying stream
+     * or in running a MatchListener.
+     */
+    private boolean advance() throws IOException {
+        if (replacement != null || pos < safeEnd) {
+            return true;
         }
-        if (byt == -1) {
-            inStatus.close();
+        byte[] matchBytes = match.matchBytes;
+        while (true) {
+            if (pos == limit) {
+                if (endOfStream) {
+                    return false;
+                }
+                fillBuffer();
+                continue;
+            }
+            int start = scan(matchBytes);
+            if (start > pos) {
+                safeEnd = start;
+                return true;
+            }
+            if (start == pos && limit - pos >= matchBytes.length) {
+                byte[] replaceWith = match.onMatch();
+                if (replaceWith != null) {
+                    pos += matchBytes.length;
+                    safeEnd = pos;
+                    if (replaceWith.length > 0) {
+                        replacement = replaceWith;
+                        replacementPos = 0;
+                        return true;
+                    }
+                    continue;
+                }
+                // still readable, only the first byte is checked past.
+                safeEnd = pos + 1;
+                return true;
+            }
+            // a possible match, more bytes are needed to decide.
+            fillBuffer();
         }
     }
-    
+
     /**
-     * Only works if checked each byte read from underlying stream.
-     * 
-     * @return true if some bytes have been skipped in the buffer. False if none
-     * have.
-     * @throws IOException if there is any error in running a MatchListener.
+     * @return the index of the first full or partial match in the unread
+     * bytes, with a partial match only possible when it runs to the end of
+     * the bytes read so far. Otherwise, the end of the bytes read.
      */
-    private boolean checkMatch() throws IOException {
-        int matchIndex = buffer.indexOf(match.matchBytes);
-        if (matchIndex != 0) {
-            return false;
+    private int scan(byte[] matchBytes) {
+        int matchLength = matchBytes.length;
+        if (matchLength == 0) {
+            return limit;
         }
-        if (match.onMatch.filter(match.matchBytes)) {
-            buffer.skip(match.matchBytes.length);
-            return true;
+        byte first = matchBytes[0];
+        for (int i = pos; i < limit; i++) {
+            if (buf[i] != first) {
+                continue;
+            }
+            int available = Math.min(matchLength, limit - i);
+            int j = 1;
+            while (j < available && buf[i + j] == matchBytes[j]) {
+                j++;
+            }
+            if (j == matchLength || (j == available && !endOfStream)) {
+                return i;
+            }
         }
-        return false;
+        return limit;
     }
 
     @Override
     public int read() throws IOException {
-        while(inStatus.isOpen() && buffer.isNotFull()) {
-            fillBuffer();
-        }
-        
-        while (checkMatch()) {
-            fillBuffer();
-        }
-        
-        if(buffer.isEmpty()) {
+        if (!advance()) {
             return -1;
         }
-        
-        return buffer.read();
+        if (replacement != null) {
+            int byt = replacement[replacementPos++] & 0xFF;
+            if (replacementPos == replacement.length) {
+                replacement = null;
+            }
+            return byt;
+        }
+        return buf[pos++] & 0xFF;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        // copied directly from InputStream implementation.
         if (b == null) {
             throw new NullPointerException();
         } else if (off < 0 || len < 0 || len > b.length - off) {
@@ -103,51 +206,149 @@ public class DetectionInputStream extends FilterInputStream {
         } else if (len == 0) {
             return 0;
         }
-
-        int c = read();
-        if (c == -1) {
+        if (!advance()) {
             return -1;
         }
-        b[off] = (byte) c;
+        if (replacement != null) {
+            int count = Math.min(len, replacement.length - replacementPos);
+            System.arraycopy(replacement, replacementPos, b, off, count);
+            skipReplacement(count);
+            return count;
+        }
+        int count = Math.min(len, safeEnd - pos);
+        System.arraycopy(buf, pos, b, off, count);
+        pos += count;
+        return count;
+    }
 
-        int i = 1;
-        try {
-            for (; i < len; i++) {
-                c = read();
-                if (c == -1) {
-                    break;
-                }
-                b[off + i] = (byte) c;
-            }
-        } catch (IOException ee) {
-            // do nothing
+    private void skipReplacement(int count) {
+        replacementPos += count;
+        if (replacementPos == replacement.length) {
+            replacement = null;
         }
-        return i;
     }
     
+    /**
+     * Skips bytes as if they were read, so any matches within them are
+     * still detected.
+     */
     @Override
     public long skip(long n) throws IOException {
         long skipped = 0;
-        while (skipped < n) {
-            int readByte = this.read();
-            if (readByte == -1) {
-                return skipped;
+        while (skipped < n && advance()) {
+            int count;
+            if (replacement != null) {
+                count = (int) Math.min(n - skipped, replacement.length - replacementPos);
+                skipReplacement(count);
+            } else {
+                count = (int) Math.min(n - skipped, safeEnd - pos);
+                pos += count;
             }
-            skipped++;
+            skipped += count;
         }
         return skipped;
     }
-    
-    
 
+    /**
+     * @return the number of bytes already read from the underlying stream
+     * and known to not be part of a match, along with any replacement bytes
+     * not yet read.
+     */
+    @Override
+    public int available() throws IOException {
+        int available = safeEnd - pos;
+        if (replacement != null) {
+            available += replacement.length - replacementPos;
+        }
+        return available;
+    }
+
+    /**
+     * Bytes are read ahead from the underlying stream, so its mark cannot be
+     * used.
+     *
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Closes the underlying stream and discards any bytes read ahead.
+     */
+    @Override
+    public void close() throws IOException {
+        replacement = null;
+        pos = 0;
+        safeEnd = 0;
+        limit = 0;
+        super.close();
+    }
+
+    /**
+     * The bytes to detect, and what to do when they are detected. When the
+     * OnMatch filters the detected bytes, they are replaced with the
+     * replacement bytes if any were provided.
+     */
     public static class Match {
         private final byte[] matchBytes;
+        private final byte[] replacement;
         private final OnMatch onMatch;
 
         public Match(byte[] matchBytes, OnMatch matchAction) {
+            this(matchBytes, null, matchAction);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param matchBytes the bytes to detect.
+         * @param replacement the bytes provided to the consumer in place of
+         * filtered matches, may be null to provide nothing in their place.
+         * @param matchAction run on detection, decides whether to filter.
+         */
+        public Match(byte[] matchBytes, byte[] replacement, OnMatch matchAction) {
             this.matchBytes = matchBytes;
+            this.replacement = replacement;
             this.onMatch = matchAction;
         }
+
+        /**
+         * @param matchBytes the bytes to detect.
+         * @param replacement the bytes to provide in their place.
+         * @return a Match that always replaces the detected bytes.
+         */
+        public static Match replace(byte[] matchBytes, byte[] replacement) {
+            return new Match(matchBytes, replacement, detect -> true);
+        }
+
+        byte[] getMatchBytes() {
+            return matchBytes;
+        }
+
+        /**
+         * Runs the OnMatch.
+         *
+         * @return the bytes to provide in place of the detected bytes, or
+         * null if the detected bytes are not filtered.
+         */
+        byte[] onMatch() throws IOException {
+            if (!onMatch.filter(matchBytes)) {
+                return null;
+            }
+            return replacement == null ? NO_BYTES : replacement;
+        }
     }
     
     @FunctionalInterface
@@ -1,18 +1,51 @@
 package au.id.simo.useful.io;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import au.id.simo.useful.CheckUtil;
 
 /**
  * Allows repeated reads of a file.
+ * <p>
+ * Copies to a {@link FileOutputStream} or a {@link WritableByteChannel} use
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, letting the
+ * operating system move the bytes without copying them through the Java heap.
+ * <p>
+ * Large files can optionally be read through a memory mapping, see
+ * {@link #setMapThreshold(long)}.
+ * <p>
+ * The asynchronous methods read the file with an
+ * {@link AsynchronousFileChannel}, so no thread is blocked waiting on the file
+ * system between chunks.
  */
 public class FileResource implements Resource {
 
+    /**
+     * The number of bytes read at a time by the asynchronous methods.
+     */
+    private static final int ASYNC_CHUNK_SIZE = 64 * 1024;
+
     private final Path path;
+    private volatile long mapThreshold = -1;
 
     public FileResource(File file) {
         this.path = file.toPath();
@@ -41,8 +74,372 @@ public class FileResource implements Resource {
         return path;
     }
 
+    /**
+     * Sets the file size at which {@link #inputStream()} reads through a
+     * memory mapping of the file, rather than through read calls.
+     * <p>
+     * Mapping avoids a system call and a copy per read, which is faster for
+     * large files read in full. The mapping is only released once garbage
+     * collected, so on some platforms the file cannot be deleted while a
+     * mapped InputStream is reachable. Files larger than 2GB are never mapped.
+     *
+     * @param mapThreshold the minimum file size in bytes to map, or a negative
+     * number to never map, which is the default.
+     * @return this instance, to enable method chaining.
+     */
+    public FileResource setMapThreshold(long mapThreshold) {
+        this.mapThreshold = mapThreshold;
+        return this;
+    }
+
     @Override
     public InputStream inputStream() throws IOException {
+        long threshold = mapThreshold;
+        if (threshold >= 0) {
+            long size = Files.size(path);
+            if (size >= threshold && size <= Integer.MAX_VALUE) {
+                return new ByteBufferInputStream(map());
+            }
+        }
         return Files.newInputStream(path);
     }
+
+    /**
+     * Maps the whole file in to memory, read only.
+     *
+     * @return the mapping of the file.
+     * @throws IOException if the file cannot be mapped, such as being larger
+     * than 2GB.
+     */
+    public MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Copies the file to the provided OutputStream. A {@link FileOutputStream}
+     * is written to via its channel, see
+     * {@link #copyTo(WritableByteChannel)}.
+     *
+     * @param out the file's bytes are written to this OutputStream.
+     * @return the number of bytes copied.
+     * @throws IOException if there is an issue reading the file or writing to
+     * the OutputStream.
+     */
+    @Override
+    public long copyTo(OutputStream out) throws IOException {
+        if (out instanceof FileOutputStream) {
+            return copyTo(((FileOutputStream) out).getChannel());
+        }
+        try (InputStream in = inputStream()) {
+            return IOUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * Copies the file to the provided channel, using
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. If a
+     * transfer makes no progress, the rest is copied through a buffer. The
+     * channel is not closed.
+     *
+     * @param target the file's bytes are written to this channel.
+     * @return the number of bytes copied.
+     * @throws IOException if there is an issue reading the file or writing to
+     * the channel.
+     */
+    public long copyTo(WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long count = channel.transferTo(position, size - position, target);
+                if (count <= 0) {
+                    if (position >= channel.size()) {
+                        // truncated while copying
+                        break;
+                    }
+                    // copy the rest through a buffer, rather than retrying a
+                    // transfer that may never progress.
+                    return position + copyBuffered(channel, position, target);
+                }
+                position += count;
+            }
+            return position;
+        }
+    }
+
+    private static long copyBuffered(FileChannel channel, long position, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long copied = 0;
+        channel.position(position);
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                copied += target.write(buffer);
+            }
+            buffer.clear();
+        }
+        return copied;
+    }
+
+    /**
+     * @return the last modified time of the file, in milliseconds since the
+     * epoch.
+     * @throws IOException if the file does not exist or cannot be accessed.
+     */
+    public long lastModified() throws IOException {
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * @return the size of the file in bytes.
+     * @throws IOException if the file does not exist or cannot be accessed.
+     */
+    public long size() throws IOException {
+        return Files.size(path);
+    }
+
+    /**
+     * Asynchronously copies the file to the provided OutputStream, using the
+     * default thread pool of {@link AsynchronousFileChannel}.
+     * <p>
+     * Writes to the OutputStream are made on the thread pool, so should not
+     * block for long.
+     *
+     * @param out the file's bytes are written to this OutputStream.
+     * @return a future of the number of bytes written to the provided
+     * OutputStream.
+     */
+    public CompletableFuture<Long> copyToAsync(OutputStream out) {
+        return copyToAsync(out, null);
+    }
+
+    /**
+     * Asynchronously copies the file to the provided OutputStream.
+     * <p>
+     * If the provided Executor is an {@link ExecutorService}, it is used to
+     * handle the reads of the file and the writes to the OutputStream. Any
+     * other Executor runs a blocking copy, as an AsynchronousFileChannel can
+     * only use an ExecutorService. If null, the default thread pool of
+     * {@link AsynchronousFileChannel} is used.
+     *
+     * @param out the file's bytes are written to this OutputStream.
+     * @param executor the Executor to use, may be null.
+     * @return a future of the number of bytes written to the provided
+     * OutputStream.
+     */
+    @Override
+    public CompletableFuture<Long> copyToAsync(OutputStream out, Executor executor) {
+        if (executor != null && !(executor instanceof ExecutorService)) {
+            return IOUtils.callAsync(() -> copyTo(out), executor);
+        }
+        return readChunks(executor, ASYNC_CHUNK_SIZE, chunk -> {
+            out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+        });
+    }
+
+    /**
+     * Asynchronously reads the whole file in to memory, using the default
+     * thread pool of {@link AsynchronousFileChannel}.
+     *
+     * @return a future of all the bytes of the file.
+     */
+    public CompletableFuture<byte[]> readAllAsync() {
+        return readAllAsync(null);
+    }
+
+    /**
+     * Asynchronously reads the whole file in to memory.
+     * <p>
+     * If the provided Executor is an {@link ExecutorService}, it is used to
+     * handle the reads of the file. Any other Executor runs a blocking read,
+     * as an AsynchronousFileChannel can only use an ExecutorService. If null,
+     * the default thread pool of {@link AsynchronousFileChannel} is used.
+     *
+     * @param executor the Executor to use, may be null.
+     * @return a future of all the bytes of the file.
+     */
+    @Override
+    public CompletableFuture<byte[]> readAllAsync(Executor executor) {
+        if (executor != null && !(executor instanceof ExecutorService)) {
+            return IOUtils.callAsync(() -> IOUtils.getBytes(this), executor);
+        }
+        long size;
+        try {
+            size = Files.size(path);
+        } catch (IOException ex) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        if (size > ByteBundle.MAX_ARRAY_SIZE) {
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException("File is too large to read in to memory: " + path));
+            return failed;
+        }
+        // the file may change size while being read, so this is only a hint.
+        ByteArrayOutputStream bout = new ByteArrayOutputStream((int) size);
+        int chunkSize = (int) Math.max(1, Math.min(size, ASYNC_CHUNK_SIZE));
+        return readChunks(executor, chunkSize, chunk -> {
+            bout.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+        }).thenApply(count -> bout.toByteArray());
+    }
+
+    private CompletableFuture<Long> readChunks(Executor executor, int chunkSize, ChunkConsumer consumer) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        AsynchronousFileChannel channel;
+        try {
+            if (executor instanceof ExecutorService) {
+                channel = AsynchronousFileChannel.open(
+                        path,
+                        Collections.singleton(StandardOpenOption.READ),
+                        (ExecutorService) executor
+                );
+            } else {
+                channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+            }
+        } catch (IOException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+            return future;
+        }
+        new ChunkReader(channel, ByteBuffer.allocate(chunkSize), consumer, future).readNext();
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * Reads an AsynchronousFileChannel from start to end, one chunk at a time,
+     * passing each chunk to a ChunkConsumer before the next read.
+     */
+    private static class ChunkReader implements CompletionHandler<Integer, Void> {
+
+        private final AsynchronousFileChannel channel;
+        private final ByteBuffer buffer;
+        private final ChunkConsumer consumer;
+        private final CompletableFuture<Long> future;
+        private long position;
+
+        ChunkReader(AsynchronousFileChannel channel, ByteBuffer buffer, ChunkConsumer consumer, CompletableFuture<Long> future) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.consumer = consumer;
+            this.future = future;
+        }
+
+        void readNext() {
+            if (future.isDone()) {
+                // canceled by the caller
+                closeChannel();
+                return;
+            }
+            try {
+                channel.read(buffer, position, null, this);
+            } catch (RuntimeException ex) {
+                failed(ex, null);
+            }
+        }
+
+        @Override
+        public void completed(Integer readCount, Void attachment) {
+            if (readCount < 0) {
+                closeChannel();
+                future.complete(position);
+                return;
+            }
+            position += readCount;
+            buffer.flip();
+            try {
+                consumer.accept(buffer);
+            } catch (IOException | RuntimeException ex) {
+                failed(ex, null);
+                return;
+            }
+            buffer.clear();
+            readNext();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            closeChannel();
+            future.completeExceptionally(exc);
+        }
+
+        private void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // nothing left to read, so the close failure is ignored.
+            }
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+        private int mark;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            CheckUtil.checkReadWriteArgs(b.length, off, len);
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            int count = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            buffer.position(mark);
+        }
+    }
 }
@@ -24,6 +24,11 @@ import java.util.TreeSet;
  * Any registered Resource, Generator or File will be written to a new file
  * within the session's base directory during registration.
  * <p>
+ * Generators write through a buffer of {@link #DEFAULT_WRITE_BUFFER_SIZE}
+ * bytes by default, see {@link #setWriteBufferSize(int)}. A registered
+ * {@link FileResource} is copied with channel transfers instead, bypassing the
+ * buffer.
+ * <p>
  * Only files created from registration methods are deleted on session close,
  * along with any created directories if they are empty. Any files or
  * directories already existing or created outside of registration methods will
@@ -31,11 +36,17 @@ import java.util.TreeSet;
  */
 public class FileSession implements URLSession {
 
+    /**
+     * The default size of the buffer Generators write through.
+     */
+    public static final int DEFAULT_WRITE_BUFFER_SIZE = 64 * 1024;
+
     private final Path baseDirPath;
     private final Resources resources;
     private final List<Path> createdFileList;
     private final List<Path> createdDirList;
     private final Latch latch;
+    private volatile int writeBufferSize = DEFAULT_WRITE_BUFFER_SIZE;
 
     /**
      * Creates a new FileSession backed by an auto generated temporary directory
@@ -175,23 +186,49 @@ public class FileSession implements URLSession {
         }
     }
 
+    /**
+     * Sets the size of the buffer registered Generators write through. Larger
+     * buffers mean fewer, larger writes to the file system.
+     *
+     * @param writeBufferSize the buffer size in bytes.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if writeBufferSize is not positive.
+     */
+    public FileSession setWriteBufferSize(int writeBufferSize) {
+        if (writeBufferSize <= 0) {
+            throw new IllegalArgumentException("writeBufferSize must be positive");
+        }
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
     @Override
     public String register(String urlPath, Generator product) throws IOException {
+        return write(urlPath, product, true);
+    }
+
+    @Override
+    public String register(String urlPath, Resource resource) throws IOException {
+        // FileResource transfers straight to the file's channel, so is not
+        // buffered.
+        return write(urlPath, resource::copyTo, !(resource instanceof FileResource));
+    }
+
+    private String write(String urlPath, Generator product, boolean buffered) throws IOException {
         latch.throwIfClosed();
         File outFile = getFile(urlPath);
         createDirectories(outFile);
         FileOutputStream fout = new FileOutputStream(outFile);
-        try (OutputStream out = new BufferedOutputStream(fout)) {
+        try (OutputStream out = buffered ? new BufferedOutputStream(fout, writeBufferSize) : fout) {
             product.writeTo(out);
         }
         return outFile.toURI().toString();
     }
 
-    @Override
-    public String register(String urlPath, Resource resource) throws IOException {
-        return register(urlPath, resource::copyTo);
-    }
-
     @Override
     public String register(String path, File resource) throws IOException {
         latch.throwIfClosed();
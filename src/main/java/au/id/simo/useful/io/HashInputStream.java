@@ -14,7 +14,7 @@ public class HashInputStream extends CountingInputStream implements Hasher {
 
     public HashInputStream(InputStream inputStream, String messageDigestAlgorithm) throws NoSuchAlgorithmException {
         super(inputStream);
-        this.messageDigest = MessageDigest.getInstance(messageDigestAlgorithm);
+        this.messageDigest = MessageDigests.newInstance(messageDigestAlgorithm);
     }
 
     public HashInputStream(InputStream inputStream, MessageDigest messageDigest) {
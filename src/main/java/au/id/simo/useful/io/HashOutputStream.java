@@ -14,7 +14,7 @@ public class HashOutputStream extends CountingOutputStream implements Hasher {
 
     public HashOutputStream(OutputStream out, String messageDigestAlgorithm) throws NoSuchAlgorithmException {
         super(out);
-        this.messageDigest = MessageDigest.getInstance(messageDigestAlgorithm);
+        this.messageDigest = MessageDigests.newInstance(messageDigestAlgorithm);
     }
 
     public HashOutputStream(OutputStream out, MessageDigest messageDigest) {
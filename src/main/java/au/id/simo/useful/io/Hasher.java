@@ -13,12 +13,6 @@ public interface Hasher {
     byte[] getHash();
 
     default String getHashString() {
-        byte[] hash = getHash();
-        StringBuilder sb = new StringBuilder(hash.length * 2);
-        for (byte b: hash) {
-            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
-            sb.append(Character.forDigit((b & 0xF), 16));
-        }
-        return sb.toString();
+        return MessageDigests.toHexString(getHash());
     }
 }
\ No newline at end of file
@@ -3,12 +3,26 @@ package au.id.simo.useful.io;
 import au.id.simo.useful.Defer;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -16,6 +30,19 @@ import java.util.concurrent.Callable;
 public class IOUtils {
     
     public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    /**
+     * The size of the buffer used by the copy methods, unless another size is
+     * provided.
+     */
+    public static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Each thread keeps a copy buffer for reuse, so copying does not allocate.
+     * A buffer is removed while in use, so a copy nested within another copy
+     * on the same thread allocates its own rather than sharing it.
+     */
+    private static final ThreadLocal<byte[]> COPY_BUFFER = new ThreadLocal<>();
     
     /**
      * Discards all data written to it. Used in
@@ -53,6 +80,149 @@ public class IOUtils {
         };
     }
 
+    /**
+     * Creates a {@link Callable} that copies the provided Resource to a file,
+     * creating any missing parent directories. Any existing file is replaced.
+     *
+     * @param resource The source of bytes to copy.
+     * @param target The file to copy the bytes to.
+     * @return The callable used to actually perform the copying. This Callable
+     * will also carry the count of the copied bytes.
+     */
+    public static Callable<Long> copyCallable(Resource resource, Path target) {
+        return () -> {
+            Path parent = target.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // a FileOutputStream lets a FileResource transfer via channels.
+            try (OutputStream out = new FileOutputStream(target.toFile())) {
+                return resource.copyTo(out);
+            }
+        };
+    }
+
+    /**
+     * Runs many copies concurrently on the provided Executor, with at most
+     * maxParallel running at once, then waits for them all to finish.
+     * <p>
+     * The copies are usually created by {@link #copyCallable(InputStream, OutputStream)}
+     * or {@link #copyCallable(Resource, Path)}, and return the number of
+     * bytes copied. A failed copy does not stop the others, its failure is
+     * recorded in the returned results.
+     * <p>
+     * Usage Example:
+     * <pre>
+     * List&lt;Callable&lt;Long&gt;&gt; copies = new ArrayList&lt;&gt;();
+     * for (String name : names) {
+     *     copies.add(IOUtils.copyCallable(resources.get(name), exportDir.resolve(name)));
+     * }
+     * CopyResults results = IOUtils.copyAll(copies, executor, 4);
+     * results.throwIfFailed();
+     * </pre>
+     * <p>
+     * If the Executor rejects the work, the remaining copies are run on the
+     * calling thread.
+     *
+     * @param copies the copies to run.
+     * @param executor the Executor to run the copies on.
+     * @param maxParallel the maximum number of copies to run at once.
+     * @return the outcome of each copy, along with totals.
+     * @throws InterruptedIOException if interrupted while waiting for the
+     * copies to finish. Copies not yet started are then skipped.
+     * @throws IllegalArgumentException if maxParallel is not positive.
+     */
+    public static CopyResults copyAll(List<? extends Callable<Long>> copies, Executor executor, int maxParallel) throws InterruptedIOException {
+        if (maxParallel <= 0) {
+            throw new IllegalArgumentException("maxParallel must be positive");
+        }
+        long start = System.nanoTime();
+        CopyResults.Result[] results = new CopyResults.Result[copies.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        int workerCount = Math.min(maxParallel, copies.size());
+        CountDownLatch finished = new CountDownLatch(workerCount);
+        boolean rejected = false;
+        for (int i = 0; i < workerCount; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        runCopies(copies, results, next, cancelled);
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                rejected = true;
+                finished.countDown();
+            }
+        }
+        if (rejected) {
+            runCopies(copies, results, next, cancelled);
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException ex) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            InterruptedIOException iioe = new InterruptedIOException("Interrupted while waiting for copies");
+            iioe.initCause(ex);
+            throw iioe;
+        }
+        return new CopyResults(Arrays.asList(results), System.nanoTime() - start);
+    }
+
+    /**
+     * Takes copies from the shared index and runs them until none remain.
+     */
+    private static void runCopies(List<? extends Callable<Long>> copies, CopyResults.Result[] results, AtomicInteger next, AtomicBoolean cancelled) {
+        int index;
+        while (!cancelled.get() && (index = next.getAndIncrement()) < results.length) {
+            long start = System.nanoTime();
+            try {
+                long count = copies.get(index).call();
+                results[index] = new CopyResults.Result(count, null, System.nanoTime() - start);
+            } catch (Exception ex) {
+                results[index] = new CopyResults.Result(0, ex, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Runs the provided {@link Callable} on the provided {@link Executor},
+     * completing the returned {@link CompletableFuture} with its result.
+     * <p>
+     * Unlike {@link CompletableFuture#supplyAsync}, checked exceptions such as
+     * IOException can be thrown by the task, and complete the returned future
+     * exceptionally as is. If the Executor rejects the task, the returned
+     * future is completed exceptionally with the rejection.
+     *
+     * @param <T> the result type of the task.
+     * @param task the task to run.
+     * @param executor the Executor to run the task on.
+     * @return a future completed when the task finishes.
+     */
+    public static <T> CompletableFuture<T> callAsync(Callable<T> task, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runner = () -> {
+            if (future.isDone()) {
+                // canceled before it started
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        try {
+            executor.execute(runner);
+        } catch (RuntimeException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
     public static long copyThenClose(InputStream input, OutputStream output) throws IOException {
         try (InputStream in = input; OutputStream out = output) {
             return copy(in, out);
@@ -65,6 +235,11 @@ public class IOUtils {
      * <p>
      * Made redundant in Java 9+ by the new method
      * {@code InputStream.transferTo(OutputStream out)}
+     * <p>
+     * Copies through a reused buffer of {@link #COPY_BUFFER_SIZE} bytes. When
+     * copying from a {@link FileInputStream} of a regular file to a
+     * {@link FileOutputStream}, their channels are used to transfer the bytes
+     * instead.
      *
      * @param input the input stream
      * @param output the output stream
@@ -72,7 +247,42 @@ public class IOUtils {
      * @throws IOException if an I/O error occurs
      */
     public static long copy(InputStream input, OutputStream output) throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        // subclasses may override the read or write methods, so cannot be
+        // bypassed with a channel transfer.
+        if (input instanceof FileInputStream && input.getClass() == FileInputStream.class
+                && output instanceof FileOutputStream && output.getClass() == FileOutputStream.class) {
+            return transfer((FileInputStream) input, (FileOutputStream) output);
+        }
+        byte[] buffer = borrowBuffer();
+        try {
+            return copy(input, output, buffer);
+        } finally {
+            COPY_BUFFER.set(buffer);
+        }
+    }
+
+    /**
+     * Copies all the contents from the given input stream to the given output
+     * stream, through a buffer of the provided size.
+     *
+     * @param input the input stream
+     * @param output the output stream
+     * @param bufferSize the number of bytes to copy at a time
+     * @return the number of bytes that have been copied
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if bufferSize is not positive
+     */
+    public static long copy(InputStream input, OutputStream output, int bufferSize) throws IOException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        if (bufferSize == COPY_BUFFER_SIZE) {
+            return copy(input, output);
+        }
+        return copy(input, output, new byte[bufferSize]);
+    }
+
+    private static long copy(InputStream input, OutputStream output, byte[] buffer) throws IOException {
         long count = 0;
         int n = 0;
         while (-1 != (n = input.read(buffer))) {
@@ -82,15 +292,75 @@ public class IOUtils {
         return count;
     }
 
+    /**
+     * Copies all the contents from the given input stream to the provided
+     * consumer, through a reused buffer of {@link #COPY_BUFFER_SIZE} bytes.
+     *
+     * @param input the input stream
+     * @param consumer passed each chunk of bytes read, it must not keep a
+     * reference to the buffer as it is reused.
+     * @return the number of bytes that have been copied
+     * @throws IOException if an I/O error occurs
+     */
     public static long copy(InputStream input, ByteCopyConsumer consumer) throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        long count = 0;
-        int n = 0;
-        while (-1 != (n = input.read(buffer))) {
-            consumer.consume(count, buffer, n);
-            count += n;
+        byte[] buffer = borrowBuffer();
+        try {
+            long count = 0;
+            int n = 0;
+            while (-1 != (n = input.read(buffer))) {
+                consumer.consume(count, buffer, n);
+                count += n;
+            }
+            return count;
+        } finally {
+            COPY_BUFFER.set(buffer);
+        }
+    }
+
+    private static byte[] borrowBuffer() {
+        byte[] buffer = COPY_BUFFER.get();
+        if (buffer == null) {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+        COPY_BUFFER.set(null);
+        return buffer;
+    }
+
+    /**
+     * Transfers from the current position of the input to the end of its file
+     * via their channels, leaving the input positioned at the end. Any bytes
+     * not transferred are then copied. An input that cannot be positioned,
+     * such as a pipe or device, is copied instead.
+     */
+    private static long transfer(FileInputStream input, FileOutputStream output) throws IOException {
+        FileChannel in = input.getChannel();
+        FileChannel out = output.getChannel();
+        long transferred = 0;
+        long start = -1;
+        try {
+            start = in.position();
+        } catch (IOException ex) {
+            // not seekable, nothing has been read yet so copy instead
+        }
+        if (start >= 0) {
+            long position = start;
+            long size = in.size();
+            while (position < size) {
+                long count = in.transferTo(position, size - position, out);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+            in.position(position);
+            transferred = position - start;
+        }
+        byte[] buffer = borrowBuffer();
+        try {
+            return transferred + copy(input, output, buffer);
+        } finally {
+            COPY_BUFFER.set(buffer);
         }
-        return count;
     }
 
     public static String getStringAsUTF8(InputStream inputStream) throws IOException {
@@ -120,13 +390,44 @@ public class IOUtils {
         }
     }
     
+    /**
+     * Reads and discards bytes from the provided InputStream until the
+     * requested number of bytes have been read, or end of stream is reached.
+     * <p>
+     * Unlike {@link InputStream#skip(long)}, this will not return early
+     * before end of stream.
+     *
+     * @param in The InputStream to read from.
+     * @param n The number of bytes to skip.
+     * @return the number of bytes skipped, which is only less than n if end of
+     * stream was reached. Zero if n is not positive.
+     * @throws IOException if there is any exception thrown when reading from
+     * the InputStream.
+     */
+    public static long skipFully(InputStream in, long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] buffer = new byte[(int) Math.min(n, DEFAULT_BUFFER_SIZE)];
+        long remaining = n;
+        while (remaining > 0) {
+            int readCount = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+            if (readCount == -1) {
+                break;
+            }
+            remaining -= readCount;
+        }
+        return n - remaining;
+    }
+
     @FunctionalInterface
     public interface ByteCopyConsumer {
         /**
          * 
          * @param total the total number of bytes that have been copied before
          * this method call from a single InputStream.
-         * @param src the byte buffer containing some bytes to copy
+         * @param src the byte buffer containing some bytes to copy, which is
+         * reused for the following bytes so must not be kept
          * @param srcLength the number of bytes available in the src array
          */
         void consume(long total, byte[] src, int srcLength);
@@ -0,0 +1,200 @@
+package au.id.simo.useful.io;
+
+import java.lang.reflect.Constructor;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Creates {@link MessageDigest} instances more cheaply than
+ * {@link MessageDigest#getInstance(String)}.
+ * <p>
+ * Looking up a provider for an algorithm is costly under load, so the first
+ * instance created for each algorithm is kept as a prototype, and later
+ * instances are cloned from it. Algorithms that do not support cloning fall
+ * back to the provider lookup every time.
+ * <p>
+ * Also provides non-cryptographic checksums as MessageDigests, for integrity
+ * checks where a cryptographic hash is overkill. These can be used anywhere a
+ * MessageDigest is accepted, such as {@link HashInputStream} and
+ * {@link HashOutputStream}. Their 32 bit value is produced as 4 big-endian
+ * bytes.
+ * <p>
+ * All methods are thread safe.
+ */
+public final class MessageDigests {
+
+    /**
+     * The CRC-32 checksum, see {@link CRC32}.
+     */
+    public static final String CRC32 = "CRC32";
+    /**
+     * The CRC-32C checksum, only available on Java 9 or later.
+     */
+    public static final String CRC32C = "CRC32C";
+    /**
+     * The Adler-32 checksum, see {@link Adler32}.
+     */
+    public static final String ADLER32 = "Adler32";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ConcurrentMap<String, DigestFactory> FACTORIES = new ConcurrentHashMap<>();
+
+    private MessageDigests() {
+        // static utility class
+    }
+
+    /**
+     * Creates a new MessageDigest for the provided algorithm.
+     *
+     * @param algorithm the name of the algorithm, any supported by
+     * {@link MessageDigest#getInstance(String)} or one of the checksum
+     * constants of this class.
+     * @return a new MessageDigest, not shared with any other caller.
+     * @throws NoSuchAlgorithmException if the algorithm is not available.
+     */
+    public static MessageDigest newInstance(String algorithm) throws NoSuchAlgorithmException {
+        DigestFactory factory = FACTORIES.get(algorithm);
+        if (factory == null) {
+            factory = createFactory(algorithm);
+            DigestFactory existing = FACTORIES.putIfAbsent(algorithm, factory);
+            if (existing != null) {
+                factory = existing;
+            }
+        }
+        return factory.create();
+    }
+
+    /**
+     * Encodes bytes as lower case hexadecimal, two characters per byte.
+     *
+     * @param bytes the bytes to encode, such as a digest.
+     * @return the hexadecimal string.
+     */
+    public static String toHexString(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        int i = 0;
+        for (byte b : bytes) {
+            hex[i++] = HEX_DIGITS[(b >> 4) & 0xF];
+            hex[i++] = HEX_DIGITS[b & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static DigestFactory createFactory(String algorithm) throws NoSuchAlgorithmException {
+        if (CRC32.equalsIgnoreCase(algorithm)) {
+            return () -> new ChecksumDigest(CRC32, new CRC32());
+        }
+        if (ADLER32.equalsIgnoreCase(algorithm)) {
+            return () -> new ChecksumDigest(ADLER32, new Adler32());
+        }
+        if (CRC32C.equalsIgnoreCase(algorithm)) {
+            return crc32cFactory();
+        }
+        MessageDigest prototype = MessageDigest.getInstance(algorithm);
+        try {
+            prototype.clone();
+        } catch (CloneNotSupportedException ex) {
+            return () -> MessageDigest.getInstance(algorithm);
+        }
+        // the prototype is never updated, so cloning it concurrently is safe.
+        return () -> {
+            try {
+                return (MessageDigest) prototype.clone();
+            } catch (CloneNotSupportedException ex) {
+                return MessageDigest.getInstance(algorithm);
+            }
+        };
+    }
+
+    /**
+     * CRC32C was added in Java 9, so is looked up reflectively.
+     */
+    private static DigestFactory crc32cFactory() throws NoSuchAlgorithmException {
+        Constructor<? extends Checksum> constructor;
+        try {
+            constructor = Class.forName("java.util.zip.CRC32C")
+                    .asSubclass(Checksum.class)
+                    .getConstructor();
+        } catch (ReflectiveOperationException ex) {
+            NoSuchAlgorithmException nsae = new NoSuchAlgorithmException(
+                    CRC32C + " requires Java 9 or later"
+            );
+            nsae.initCause(ex);
+            throw nsae;
+        }
+        return () -> {
+            try {
+                return new ChecksumDigest(CRC32C, constructor.newInstance());
+            } catch (ReflectiveOperationException ex) {
+                NoSuchAlgorithmException nsae = new NoSuchAlgorithmException(CRC32C);
+                nsae.initCause(ex);
+                throw nsae;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface DigestFactory {
+
+        MessageDigest create() throws NoSuchAlgorithmException;
+    }
+
+    /**
+     * Adapts a 32 bit {@link Checksum} to a MessageDigest.
+     */
+    private static final class ChecksumDigest extends MessageDigest {
+
+        private static final int DIGEST_LENGTH = 4;
+
+        private final Checksum checksum;
+
+        ChecksumDigest(String algorithm, Checksum checksum) {
+            super(algorithm);
+            this.checksum = checksum;
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return DIGEST_LENGTH;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            checksum.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            checksum.update(input, offset, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            long value = checksum.getValue();
+            checksum.reset();
+            return new byte[]{
+                (byte) (value >>> 24),
+                (byte) (value >>> 16),
+                (byte) (value >>> 8),
+                (byte) value
+            };
+        }
+
+        @Override
+        protected void engineReset() {
+            checksum.reset();
+        }
+
+        @Override
+        public Object clone() throws CloneNotSupportedException {
+            // the Checksum cannot be copied, so neither can its state.
+            throw new CloneNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package au.id.simo.useful.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.id.simo.useful.io.DetectionInputStream.Match;
+
+/**
+ * A pass through InputStream that detects many series of bytes in a single
+ * pass, running the OnMatch of each Match as its bytes are detected.
+ * <p>
+ * Unlike chaining a {@link DetectionInputStream} per Match, the cost per byte
+ * does not grow with the number of Matches. The bytes are run through an
+ * Aho-Corasick automaton, with a single table lookup per byte.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * List&lt;Match&gt; matches = Arrays.asList(
+ *     Match.replace("${host}".getBytes(), hostBytes),
+ *     Match.replace("${port}".getBytes(), portBytes),
+ *     new Match("[sudo] password: ".getBytes(), detected -&gt; {
+ *         sendPassword();
+ *         return true;
+ *     })
+ * );
+ * InputStream in = new MultiDetectionInputStream(processOut, matches);
+ * </pre>
+ * <p>
+ * As with DetectionInputStream, filtered bytes are not provided to the
+ * consumer of this stream, or are replaced with the replacement bytes of the
+ * Match. A match is only acted on once the consumer has read all the bytes
+ * before it.
+ * <p>
+ * Matches never overlap, scanning resumes after each match whether or not it
+ * was filtered. When the bytes of one match overlap another, the match that
+ * ends first is acted on, and of those ending at the same byte, the longest.
+ */
+public class MultiDetectionInputStream extends FilterInputStream {
+
+    private final Match[] matches;
+    private final ByteAutomaton automaton;
+    private final byte[] buf;
+    /**
+     * The next byte to provide to the consumer.
+     */
+    private int pos;
+    /**
+     * Bytes from pos up to safeEnd can be provided to the consumer.
+     */
+    private int safeEnd;
+    /**
+     * Bytes up to scanPos have been run through the automaton.
+     */
+    private int scanPos;
+    /**
+     * The end of the bytes read from the underlying stream.
+     */
+    private int limit;
+    private boolean endOfStream;
+    private int state;
+    /**
+     * The index of the match starting at safeEnd, acted on once the consumer
+     * reaches it. -1 if none.
+     */
+    private int pendingMatch;
+    /**
+     * Provided to the consumer before any more bytes from buf, null if none.
+     */
+    private byte[] replacement;
+    private int replacementPos;
+
+    public MultiDetectionInputStream(InputStream in, List<Match> matches) {
+        this(in, matches, DetectionInputStream.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param in the InputStream to read from.
+     * @param matches the bytes to detect, and what to do when each is
+     * detected. If the same bytes are in more than one Match, only the first
+     * is used.
+     * @param blockSize the number of bytes to read from the underlying stream
+     * at a time. Increased to the length of the longest match bytes if
+     * smaller.
+     * @throws IllegalArgumentException if there are no matches, any match has
+     * no bytes, or blockSize is not positive.
+     */
+    public MultiDetectionInputStream(InputStream in, List<Match> matches, int blockSize) {
+        super(in);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.matches = matches.toArray(new Match[0]);
+        List<byte[]> patterns = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            patterns.add(match.getMatchBytes());
+        }
+        this.automaton = new ByteAutomaton(patterns);
+        this.buf = new byte[Math.max(blockSize, automaton.getMaxPatternLength())];
+        this.state = ByteAutomaton.START;
+        this.pendingMatch = -1;
+    }
+
+    /**
+     * Reads another block from the underlying stream, after any unread
+     * bytes.
+     */
+    private void fillBuffer() throws IOException {
+        if (pos == limit) {
+            pos = 0;
+            safeEnd = 0;
+            scanPos = 0;
+            limit = 0;
+        } else if (limit == buf.length) {
+            // make room by moving the unread bytes to the start
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            safeEnd -= pos;
+            scanPos -= pos;
+            limit -= pos;
+            pos = 0;
+        }
+        int readCount = in.read(buf, limit, buf.length - limit);
+        if (readCount == -1) {
+            endOfStream = true;
+        } else {
+            limit += readCount;
+        }
+    }
+
+    /**
+     * Scans the unread bytes, acting on any match the consumer has reached,
+     * until some bytes can be provided to the consumer.
+     *
+     * @return true if there are bytes that can be provided to the consumer,
+     * false if end of stream has been reached.
+     * @throws IOException if there is any error reading the underlying stream
+     * or in running a MatchListener.
+     */
+    private boolean advance() throws IOException {
+        while (true) {
+            if (replacement != null || pos < safeEnd) {
+                return true;
+            }
+            if (pendingMatch >= 0) {
+                Match match = matches[pendingMatch];
+                pendingMatch = -1;
+                // scanning resumes after the match, with nothing pending.
+                state = ByteAutomaton.START;
+                int matchEnd = pos + match.getMatchBytes().length;
+                byte[] replaceWith = match.onMatch();
+                if (replaceWith == null) {
+                    safeEnd = matchEnd;
+                } else {
+                    pos = matchEnd;
+                    safeEnd = matchEnd;
+                    if (replaceWith.length > 0) {
+                        replacement = replaceWith;
+                        replacementPos = 0;
+                    }
+                }
+                continue;
+            }
+            if (scanPos == limit) {
+                if (endOfStream) {
+                    if (pos == limit) {
+                        return false;
+                    }
+                    // pending bytes can no longer become a match
+                    safeEnd = limit;
+                    state = ByteAutomaton.START;
+                    continue;
+                }
+                fillBuffer();
+                continue;
+            }
+            scan();
+        }
+    }
+
+    /**
+     * Runs bytes through the automaton until a match is found or the bytes
+     * read so far run out.
+     */
+    private void scan() {
+        int s = state;
+        int i = scanPos;
+        while (i < limit) {
+            s = automaton.next(s, buf[i++]);
+            int found = automaton.match(s);
+            if (found >= 0) {
+                state = s;
+                scanPos = i;
+                pendingMatch = found;
+                safeEnd = i - matches[found].getMatchBytes().length;
+                return;
+            }
+        }
+        state = s;
+        scanPos = i;
+        safeEnd = i - automaton.depth(s);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!advance()) {
+            return -1;
+        }
+        if (replacement != null) {
+            int byt = replacement[replacementPos] & 0xFF;
+            skipReplacement(1);
+            return byt;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        } else if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        if (!advance()) {
+            return -1;
+        }
+        if (replacement != null) {
+            int count = Math.min(len, replacement.length - replacementPos);
+            System.arraycopy(replacement, replacementPos, b, off, count);
+            skipReplacement(count);
+            return count;
+        }
+        int count = Math.min(len, safeEnd - pos);
+        System.arraycopy(buf, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    private void skipReplacement(int count) {
+        replacementPos += count;
+        if (replacementPos == replacement.length) {
+            replacement = null;
+        }
+    }
+
+    /**
+     * Skips bytes as if they were read, so any matches within them are
+     * still detected.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && advance()) {
+            int count;
+            if (replacement != null) {
+                count = (int) Math.min(n - skipped, replacement.length - replacementPos);
+                skipReplacement(count);
+            } else {
+                count = (int) Math.min(n - skipped, safeEnd - pos);
+                pos += count;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return the number of bytes already read from the underlying stream
+     * and known to not be part of a match, along with any replacement bytes
+     * not yet read.
+     */
+    @Override
+    public int available() throws IOException {
+        int available = safeEnd - pos;
+        if (replacement != null) {
+            available += replacement.length - replacementPos;
+        }
+        return available;
+    }
+
+    /**
+     * Bytes are read ahead from the underlying stream, so its mark cannot be
+     * used.
+     *
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Closes the underlying stream and discards any bytes read ahead.
+     */
+    @Override
+    public void close() throws IOException {
+        replacement = null;
+        pendingMatch = -1;
+        pos = 0;
+        safeEnd = 0;
+        scanPos = 0;
+        limit = 0;
+        super.close();
+    }
+}
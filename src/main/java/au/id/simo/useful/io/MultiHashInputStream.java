@@ -0,0 +1,278 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An InputStream implementation that builds several hashes of all bytes read
+ * through it, in a single pass.
+ * <p>
+ * Replaces stacking a {@link HashInputStream} per algorithm. By default the
+ * digests are updated on the reading thread. When an Executor is provided, the
+ * bytes read are gathered into blocks, and each digest is updated with a block
+ * on its own worker thread while the next block is being read. At most one
+ * block is being hashed at a time, so memory use is bounded to two blocks.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * MultiHashInputStream in = new MultiHashInputStream(
+ *         fileIn, executor, MultiHashInputStream.DEFAULT_BLOCK_SIZE,
+ *         "SHA-256", "MD5", MessageDigests.CRC32
+ * );
+ * IOUtils.copy(in, out);
+ * String sha256 = in.getHashString("SHA-256");
+ * String md5 = in.getHashString("MD5");
+ * </pre>
+ * <p>
+ * The hashes are calculated once, on the first request for any of them, so
+ * they should only be requested after all bytes have been read. As a
+ * {@link Hasher} it provides the hash of the first algorithm.
+ */
+public class MultiHashInputStream extends CountingInputStream implements Hasher {
+
+    /**
+     * The default number of bytes gathered before the digests are updated on
+     * worker threads.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    /**
+     * Null when digests are updated on the reading thread.
+     */
+    private final Executor executor;
+    private byte[] block;
+    private int blockLength;
+    /**
+     * The block being hashed by the pending updates, reused once they finish.
+     */
+    private byte[] spareBlock;
+    private CompletableFuture<Void> pending;
+    private Map<String, byte[]> hashes;
+
+    /**
+     * Creates a stream that updates the digests on the reading thread.
+     *
+     * @param in the InputStream to read from.
+     * @param algorithms the algorithms to hash with, as accepted by
+     * {@link MessageDigests#newInstance(String)}.
+     * @throws NoSuchAlgorithmException if any algorithm is not available.
+     */
+    public MultiHashInputStream(InputStream in, String... algorithms) throws NoSuchAlgorithmException {
+        this(in, null, DEFAULT_BLOCK_SIZE, algorithms);
+    }
+
+    /**
+     * Creates a stream that updates the digests on the provided Executor.
+     *
+     * @param in the InputStream to read from.
+     * @param executor the Executor to update digests on, or null to update
+     * them on the reading thread. Updates rejected by the Executor are run on
+     * the reading thread.
+     * @param blockSize the number of bytes gathered before updating the
+     * digests on the Executor.
+     * @param algorithms the algorithms to hash with, as accepted by
+     * {@link MessageDigests#newInstance(String)}.
+     * @throws NoSuchAlgorithmException if any algorithm is not available.
+     * @throws IllegalArgumentException if no algorithms are provided, or
+     * blockSize is not positive.
+     */
+    public MultiHashInputStream(InputStream in, Executor executor, int blockSize, String... algorithms) throws NoSuchAlgorithmException {
+        super(in);
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("At least one algorithm is required");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = MessageDigests.newInstance(algorithms[i]);
+        }
+        this.executor = executor;
+        if (executor != null) {
+            this.block = new byte[blockSize];
+            this.spareBlock = new byte[blockSize];
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int byt = super.read();
+        if (byt != -1) {
+            if (executor == null) {
+                for (MessageDigest digest : digests) {
+                    digest.update((byte) byt);
+                }
+            } else {
+                block[blockLength++] = (byte) byt;
+                if (blockLength == block.length) {
+                    submitBlock();
+                }
+            }
+        }
+        return byt;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int readByteCount = super.read(b, off, len);
+        if (readByteCount > 0) {
+            if (executor == null) {
+                for (MessageDigest digest : digests) {
+                    digest.update(b, off, readByteCount);
+                }
+            } else {
+                gather(b, off, readByteCount);
+            }
+        }
+        return readByteCount;
+    }
+
+    private void gather(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Waits for the previous block to be hashed, then starts hashing the
+     * current block on the Executor.
+     */
+    private void submitBlock() throws IOException {
+        awaitPending();
+        byte[] data = block;
+        int length = blockLength;
+        CompletableFuture<?>[] updates = new CompletableFuture<?>[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            MessageDigest digest = digests[i];
+            updates[i] = runAsync(() -> digest.update(data, 0, length));
+        }
+        pending = CompletableFuture.allOf(updates);
+        block = spareBlock;
+        spareBlock = data;
+        blockLength = 0;
+    }
+
+    private CompletableFuture<Void> runAsync(Runnable update) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Runnable runner = () -> {
+            try {
+                update.run();
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        try {
+            executor.execute(runner);
+        } catch (RejectedExecutionException ex) {
+            runner.run();
+        }
+        return future;
+    }
+
+    private void awaitPending() throws IOException {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException iioe = new InterruptedIOException("Interrupted while waiting for digest updates");
+            iioe.initCause(ex);
+            throw iioe;
+        } catch (ExecutionException ex) {
+            throw new IOException("Digest update failed", ex.getCause());
+        }
+        pending = null;
+    }
+
+    /**
+     * Calculates the hashes, if not already calculated.
+     */
+    private Map<String, byte[]> hashes() throws IOException {
+        if (hashes == null) {
+            if (executor != null) {
+                if (blockLength > 0) {
+                    submitBlock();
+                }
+                awaitPending();
+            }
+            Map<String, byte[]> map = new LinkedHashMap<>();
+            for (int i = 0; i < digests.length; i++) {
+                map.put(algorithms[i], digests[i].digest());
+            }
+            hashes = map;
+        }
+        return hashes;
+    }
+
+    /**
+     * @return the algorithms hashed with, in the order provided.
+     */
+    public String[] getAlgorithms() {
+        return algorithms.clone();
+    }
+
+    /**
+     * @param algorithm one of the algorithms provided to the constructor.
+     * @return the hash of all bytes read.
+     * @throws IOException if the hash could not be calculated, such as a
+     * failure updating the digest on the Executor.
+     * @throws IllegalArgumentException if the algorithm was not provided to
+     * the constructor.
+     */
+    public byte[] getHash(String algorithm) throws IOException {
+        byte[] hash = hashes().get(algorithm);
+        if (hash == null) {
+            throw new IllegalArgumentException("Algorithm not hashed: " + algorithm);
+        }
+        return hash.clone();
+    }
+
+    /**
+     * @param algorithm one of the algorithms provided to the constructor.
+     * @return the hex encoded hash of all bytes read.
+     * @throws IOException if the hash could not be calculated, such as a
+     * failure updating the digest on the Executor.
+     * @throws IllegalArgumentException if the algorithm was not provided to
+     * the constructor.
+     */
+    public String getHashString(String algorithm) throws IOException {
+        return MessageDigests.toHexString(getHash(algorithm));
+    }
+
+    /**
+     * @return the hash of the first algorithm provided to the constructor.
+     * @throws UncheckedIOException if the hash could not be calculated.
+     */
+    @Override
+    public byte[] getHash() {
+        try {
+            return getHash(algorithms[0]);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
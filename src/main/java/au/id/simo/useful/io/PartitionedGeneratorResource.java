@@ -0,0 +1,302 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import au.id.simo.useful.CheckUtil;
+
+/**
+ * Runs a list of section {@link Generator}s in parallel, while the returned
+ * {@link InputStream} reads their output in the order the sections were
+ * provided.
+ * <p>
+ * Each section writes into its own bounded buffer, so later sections can be
+ * generated ahead of time while an earlier section is still being read. A
+ * section is read as soon as every preceding section has been read to its end.
+ * <p>
+ * At most {@code maxActiveSections} sections are submitted to the
+ * ExecutorService at any one time, so the memory buffered by a single
+ * InputStream is bounded to {@code maxActiveSections * sectionBufferSize}
+ * bytes. The next section is only submitted once the earliest active section
+ * has been completely read.
+ * <p>
+ * Sections are submitted in order, so the ExecutorService used must start
+ * tasks in the order they are submitted and be able to run
+ * {@code maxActiveSections} tasks at once. The default is a
+ * {@link ForkJoinPool} with a parallelism of the number of available
+ * processors, which is also the default maximum number of active sections.
+ * <p>
+ * Any exception thrown by a section Generator is rethrown on the consumer
+ * thread when the end of that section is reached, or when the InputStream is
+ * closed.
+ *
+ * @see ConcurrentGeneratorResource
+ */
+public class PartitionedGeneratorResource implements Resource {
+
+    /**
+     * Size of the buffer used by each section.
+     */
+    private static final int DEFAULT_SECTION_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The ExecutorService used to run the section Generators, if one isn't
+     * specified in a constructor.
+     */
+    private static ExecutorService defaultExecutorService = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors()
+    );
+
+    /**
+     * Replaces the default ExecutorService used to run the section Generators.
+     * <p>
+     * It is recommended that the returned ExecutorService be shutdown by the
+     * calling code.
+     *
+     * @param service The new ExecutorService.
+     * @return The existing ExecutorService so the caller can shut it down
+     * cleanly.
+     */
+    public static synchronized ExecutorService setDefaultExecutorService(ExecutorService service) {
+        ExecutorService old = defaultExecutorService;
+        defaultExecutorService = service;
+        return old;
+    }
+
+    private static synchronized ExecutorService getDefaultExecutorService() {
+        return defaultExecutorService;
+    }
+
+    private final ExecutorService service;
+    private final List<Generator> sections;
+    private final int sectionBufferSize;
+    private final int maxActiveSections;
+
+    private volatile long closeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+            ConcurrentGeneratorResource.DEFAULT_CLOSE_TIMEOUT_MILLIS
+    );
+
+    /**
+     * Constructor.
+     *
+     * @param sections The Generators that will be run in parallel, with their
+     * output read in the order of this list.
+     */
+    public PartitionedGeneratorResource(List<? extends Generator> sections) {
+        this(
+                getDefaultExecutorService(),
+                sections,
+                DEFAULT_SECTION_BUFFER_SIZE,
+                Runtime.getRuntime().availableProcessors()
+        );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param service The executor service that the section Generators will
+     * use.
+     * @param sections The Generators that will be run in parallel, with their
+     * output read in the order of this list.
+     * @param maxActiveSections The maximum number of sections that will be
+     * generated at the same time for a single InputStream.
+     */
+    public PartitionedGeneratorResource(ExecutorService service, List<? extends Generator> sections, int maxActiveSections) {
+        this(service, sections, DEFAULT_SECTION_BUFFER_SIZE, maxActiveSections);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param service The executor service that the section Generators will
+     * use.
+     * @param sections The Generators that will be run in parallel, with their
+     * output read in the order of this list.
+     * @param sectionBufferSize The number of bytes in size of the buffer
+     * between each section Generator and the created InputStream.
+     * @param maxActiveSections The maximum number of sections that will be
+     * generated at the same time for a single InputStream.
+     * @throws IllegalArgumentException if either sectionBufferSize or
+     * maxActiveSections is less than one.
+     */
+    public PartitionedGeneratorResource(ExecutorService service, List<? extends Generator> sections, int sectionBufferSize, int maxActiveSections) {
+        if (sectionBufferSize < 1) {
+            throw new IllegalArgumentException("sectionBufferSize must be greater than zero");
+        }
+        if (maxActiveSections < 1) {
+            throw new IllegalArgumentException("maxActiveSections must be greater than zero");
+        }
+        this.service = service;
+        this.sections = new ArrayList<>(sections);
+        this.sectionBufferSize = sectionBufferSize;
+        this.maxActiveSections = maxActiveSections;
+    }
+
+    /**
+     * Sets the time closing a section waits for its unfinished Generator to
+     * complete before canceling it. Defaults to 1 second.
+     * <p>
+     * A section is closed once its end has been read, or when the
+     * InputStream is closed, so the wait is bounded either way.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if timeout is negative.
+     * @see ConcurrentGeneratorResource#setCloseTimeout(long, TimeUnit)
+     */
+    public PartitionedGeneratorResource setCloseTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        closeTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Submits the first sections to the ExecutorService and returns a stream
+     * that reads their output in order.
+     * <p>
+     * NOTE: Resource leakage is very likely to occur if the returned
+     * InputStream is not closed.
+     *
+     * @return the stream of data generated from all the section Generators.
+     * @throws IOException if there is an issue in starting the first sections.
+     */
+    @Override
+    public InputStream inputStream() throws IOException {
+        return new SectionInputStream(sections.iterator());
+    }
+
+    private final class SectionInputStream extends InputStream {
+
+        private final Iterator<Generator> pendingSections;
+        private final Deque<InputStream> activeSections;
+        private final Latch latch;
+        private final byte[] single = new byte[1];
+
+        SectionInputStream(Iterator<Generator> pendingSections) throws IOException {
+            this.pendingSections = pendingSections;
+            this.activeSections = new ArrayDeque<>(maxActiveSections);
+            this.latch = new Latch("Stream closed.");
+            try {
+                submitSections();
+            } catch (IOException ex) {
+                // cancel any sections that were started
+                try {
+                    close();
+                } catch (IOException closeEx) {
+                    ex.addSuppressed(closeEx);
+                }
+                throw ex;
+            }
+        }
+
+        /**
+         * Submits pending sections until the maximum number of active
+         * sections is reached, or no more sections remain.
+         */
+        private void submitSections() throws IOException {
+            while (activeSections.size() < maxActiveSections && pendingSections.hasNext()) {
+                Generator generator = pendingSections.next();
+                PipeOutputStream out = new PipeOutputStream(sectionBufferSize);
+                // executed as a FutureTask rather than submitted, as
+                // ForkJoinPool wraps checked exceptions thrown by a Callable
+                // in a RuntimeException.
+                FutureTask<Object> future = new FutureTask<>(ConcurrentGeneratorResource.producer(generator, out));
+                try {
+                    service.execute(future);
+                } catch (RejectedExecutionException ex) {
+                    out.getInputStream().close();
+                    throw new IOException("Section rejected by ExecutorService", ex);
+                }
+                activeSections.add(new ConcurrentGeneratorResource.ConsumerInputStream(
+                        out.getInputStream(),
+                        future,
+                        closeTimeoutNanos,
+                        TimeUnit.NANOSECONDS
+                ));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int readCount = read(single, 0, 1);
+            if (readCount == -1) {
+                return -1;
+            }
+            return single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            CheckUtil.checkReadWriteArgs(b.length, off, len);
+            latch.throwIfClosed();
+            if (len == 0) {
+                return 0;
+            }
+            InputStream current;
+            while ((current = activeSections.peek()) != null) {
+                int readCount = current.read(b, off, len);
+                if (readCount != -1) {
+                    return readCount;
+                }
+                // section complete, so rethrow any Generator exception before
+                // moving on to the next section.
+                activeSections.remove();
+                current.close();
+                submitSections();
+            }
+            return -1;
+        }
+
+        @Override
+        public int available() throws IOException {
+            latch.throwIfClosed();
+            InputStream current = activeSections.peek();
+            if (current == null) {
+                return 0;
+            }
+            return current.available();
+        }
+
+        /**
+         * Closes all active sections, canceling any that have not finished.
+         * Pending sections are never started.
+         *
+         * @throws IOException the first exception thrown by any active section
+         * Generator.
+         */
+        @Override
+        public void close() throws IOException {
+            if (latch.isClosed()) {
+                return;
+            }
+            latch.close();
+            IOException firstException = null;
+            InputStream section;
+            while ((section = activeSections.poll()) != null) {
+                try {
+                    section.close();
+                } catch (IOException ex) {
+                    if (firstException == null) {
+                        firstException = ex;
+                    }
+                }
+            }
+            if (firstException != null) {
+                throw firstException;
+            }
+        }
+    }
+}
@@ -3,8 +3,10 @@ package au.id.simo.useful.io;
 import au.id.simo.useful.collections.ByteRingBuffer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -34,6 +36,14 @@ import java.util.concurrent.locks.ReentrantLock;
  * While it is possible to use both streams in the same thread, it will
  * deadlock when trying to read and empty buffer, or write to a full
  * buffer.
+ * <p>
+ * By default both streams block indefinitely. A read timeout can be set to
+ * limit how long a single read waits for bytes, and a deadline can be set
+ * after which any blocking read or write fails while this OutputStream is
+ * still open. Both fail with an {@link InterruptedIOException}.
+ * <p>
+ * Closing the InputStream causes any current or future write to fail, so a
+ * producer is not left blocked on a full buffer that will never be read.
  */
 public class PipeOutputStream extends OutputStream {
 
@@ -44,6 +54,20 @@ public class PipeOutputStream extends OutputStream {
     private final Latch writeLatch;
     private final InputStream inputStream;
 
+    /**
+     * Maximum nanoseconds a single read will wait for bytes, zero to wait
+     * indefinitely.
+     */
+    private volatile long readTimeoutNanos;
+    /**
+     * {@link System#nanoTime()} after which blocking reads and writes fail,
+     * only used when {@link #hasDeadline} is true.
+     */
+    private volatile long deadlineNanos;
+    private volatile boolean hasDeadline;
+    private volatile boolean inputClosed;
+    private volatile boolean writeRefused;
+
     /**
      * Create a new PipeOutputStream with the specified buffer size.
      * @param bufferSize size of the buffer in bytes.
@@ -67,6 +91,105 @@ public class PipeOutputStream extends OutputStream {
         return inputStream;
     }
 
+    /**
+     * Sets the maximum time a single read of the paired InputStream will wait
+     * for bytes to be written.
+     *
+     * @param timeout the maximum time to wait, zero to wait indefinitely.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     * @throws IllegalArgumentException if timeout is negative.
+     */
+    public PipeOutputStream setReadTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        readTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets a deadline the provided time from now. Once passed, any read or
+     * write that would block, or has blocked, fails if this OutputStream has
+     * not been closed.
+     * <p>
+     * Bytes already in the buffer can still be read after the deadline.
+     *
+     * @param timeout the time from now the deadline is set to.
+     * @param unit the time unit of the timeout argument.
+     * @return this instance, to enable method chaining.
+     */
+    public PipeOutputStream setDeadline(long timeout, TimeUnit unit) {
+        deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        hasDeadline = true;
+        return this;
+    }
+
+    /**
+     * Used by producers to check if the bytes they write will ever be read.
+     *
+     * @return true if either this OutputStream or the paired InputStream has
+     * been closed.
+     */
+    public boolean isClosed() {
+        return writeLatch.isClosed();
+    }
+
+    /**
+     * Used by producers to tell a failed write caused by the consumer losing
+     * interest apart from their own failures.
+     *
+     * @return true if a write has failed because the paired InputStream was
+     * closed.
+     */
+    public boolean isWriteRefused() {
+        return writeRefused;
+    }
+
+    /**
+     * Waits on the provided condition until signalled, or the provided time
+     * limit or deadline is reached.
+     * <p>
+     * Must be called while holding the lock.
+     *
+     * @param condition the condition to wait on.
+     * @param timeoutNanos the maximum nanoseconds to wait, zero to not limit
+     * the wait other than by the deadline.
+     * @param startNanos the {@link System#nanoTime()} the timeout is measured
+     * from.
+     * @throws InterruptedIOException if the time limit or deadline has been
+     * reached, or the thread was interrupted.
+     */
+    private void await(Condition condition, long timeoutNanos, long startNanos) throws InterruptedIOException {
+        long now = System.nanoTime();
+        long waitNanos = Long.MAX_VALUE;
+        String timeoutMessage = null;
+        if (timeoutNanos > 0) {
+            waitNanos = timeoutNanos - (now - startNanos);
+            timeoutMessage = "Read timed out";
+        }
+        if (hasDeadline && deadlineNanos - now < waitNanos) {
+            waitNanos = deadlineNanos - now;
+            timeoutMessage = "Deadline exceeded";
+        }
+        if (waitNanos <= 0) {
+            throw new InterruptedIOException(timeoutMessage);
+        }
+        try {
+            if (waitNanos == Long.MAX_VALUE) {
+                condition.await();
+            } else {
+                condition.awaitNanos(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            // reset flag, so the caller can also see it was interrupted.
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
     @Override
     public void write(int b) throws IOException {
         write(new byte[]{(byte) b});
@@ -78,29 +201,47 @@ public class PipeOutputStream extends OutputStream {
         // if the provided len is larger than the buffer capacity, chop it up and write a bit at a time.
         while(remainingLen > 0) {
             int writeAmount = Math.min(buffer.capacity(), remainingLen);
-            int adjustedOffset = len - remainingLen;
+            int adjustedOffset = off + (len - remainingLen);
             writeSegment(b, adjustedOffset, writeAmount);
             remainingLen -= writeAmount;
         }
     }
 
     private void writeSegment(byte[] b, int off, int len) throws IOException {
-        writeLatch.throwIfClosed();
+        throwIfNotWritable();
         lock.lock();
         try {
+            long start = System.nanoTime();
             while (buffer.getFreeSpace() < len) {
                 // block to await enough space to write len
-                notFull.await();
+                await(notFull, 0, start);
+                // the paired InputStream may have closed while waiting
+                throwIfNotWritable();
             }
             buffer.write(b, off, len);
             notEmpty.signal();
-        } catch (InterruptedException e) {
-            throw new IOException(e);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Throws if either stream has been closed. An interrupt of a writer whose
+     * paired InputStream has closed is reported as the interrupt, so it is not
+     * mistaken for the consumer losing interest.
+     *
+     * @throws IOException if either stream has been closed.
+     */
+    private void throwIfNotWritable() throws IOException {
+        if (inputClosed) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while writing");
+            }
+            writeRefused = true;
+        }
+        writeLatch.throwIfClosed();
+    }
+
     @Override
     public void close() throws IOException {
         writeLatch.close();
@@ -133,6 +274,7 @@ public class PipeOutputStream extends OutputStream {
             readLatch.throwIfClosed();
             lock.lock();
             try {
+                long start = System.nanoTime();
                 while (buffer.isEmpty()) {
                     // check closed status before waiting
                     if (buffer.isEmpty() && writeLatch.isClosed()) {
@@ -141,14 +283,12 @@ public class PipeOutputStream extends OutputStream {
                     }
                     // block to await bytes to be written, or for the
                     // paired PipeOutputStream to close.
-                    notEmpty.await();
+                    await(notEmpty, readTimeoutNanos, start);
                 }
                 int readLength = Math.min(len, buffer.size());
                 buffer.read(b, off, readLength);
                 notFull.signal();
                 return readLength;
-            } catch (InterruptedException e) {
-                throw new IOException(e);
             } finally {
                 lock.unlock();
             }
@@ -163,8 +303,17 @@ public class PipeOutputStream extends OutputStream {
         @Override
         public void close() {
             readLatch.close();
+            inputClosed = true;
             // close writer as well, no point having the writer waste resources.
             writeLatch.close();
+            lock.lock();
+            try {
+                // signal OutputStream to stop waiting for free space and
+                // notice this InputStream has been closed.
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
         }
     }
 }
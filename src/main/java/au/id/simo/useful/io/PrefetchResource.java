@@ -0,0 +1,210 @@
+package au.id.simo.useful.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reads ahead of the consumer of the provided Resource on another thread.
+ * <p>
+ * Useful for slow blocking sources such as {@link URLResource} or
+ * {@link FileResource}, so that any work done with the bytes on the consumer
+ * thread, such as decompression or parsing, overlaps with the IO of reading
+ * them.
+ * <p>
+ * The underlying Resource is opened, read and closed on a thread of the
+ * ExecutorService, which reads up to {@code chunkCount} chunks of
+ * {@code chunkSize} bytes ahead of the consumer. This is built on
+ * {@link ConcurrentGeneratorResource}, which provides the default
+ * ExecutorService when one is not passed in a constructor.
+ * <p>
+ * Any exception thrown while reading the underlying Resource is rethrown on
+ * the consumer thread when the returned InputStream is closed.
+ */
+public class PrefetchResource extends FilterResource {
+
+    /**
+     * The number of bytes read from the underlying Resource at a time.
+     */
+    private static final int DEFAULT_CHUNK_SIZE = IOUtils.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The number of chunks that can be read ahead of the consumer.
+     */
+    private static final int DEFAULT_CHUNK_COUNT = 16;
+
+    private final ExecutorService service;
+    private final int chunkSize;
+    private final int chunkCount;
+
+    /**
+     * Constructor.
+     *
+     * @param resource The Resource to read ahead of the consumer.
+     */
+    public PrefetchResource(Resource resource) {
+        this(null, resource, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param resource The Resource to read ahead of the consumer.
+     * @param chunkSize The number of bytes read from the underlying Resource
+     * at a time.
+     * @param chunkCount The number of chunks that can be read ahead of the
+     * consumer.
+     */
+    public PrefetchResource(Resource resource, int chunkSize, int chunkCount) {
+        this(null, resource, chunkSize, chunkCount);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param service The executor service used to read the underlying
+     * Resource. If null, the default of {@link ConcurrentGeneratorResource} is
+     * used.
+     * @param resource The Resource to read ahead of the consumer.
+     * @param chunkSize The number of bytes read from the underlying Resource
+     * at a time.
+     * @param chunkCount The number of chunks that can be read ahead of the
+     * consumer.
+     * @throws IllegalArgumentException if chunkSize or chunkCount is less than
+     * one.
+     */
+    public PrefetchResource(ExecutorService service, Resource resource, int chunkSize, int chunkCount) {
+        super(resource);
+        checkChunkArgs(chunkSize, chunkCount);
+        this.service = service;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+    }
+
+    private static void checkChunkArgs(int chunkSize, int chunkCount) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be greater than zero");
+        }
+        if (chunkCount < 1) {
+            throw new IllegalArgumentException("chunkCount must be greater than zero");
+        }
+        if ((long) chunkSize * chunkCount > ByteBundle.MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException("chunkSize * chunkCount is too large");
+        }
+    }
+
+    /**
+     * Starts reading the underlying Resource on another thread.
+     * <p>
+     * NOTE: Resource leakage is very likely to occur if the returned
+     * InputStream is not closed.
+     *
+     * @return an InputStream of the underlying Resource's bytes.
+     * @throws IOException if there is an issue in starting the read ahead
+     * thread.
+     */
+    @Override
+    public InputStream inputStream() throws IOException {
+        Generator reader = out -> {
+            try (InputStream in = resource.inputStream()) {
+                copyChunks(in, out, chunkSize);
+            }
+        };
+        return createResource(service, reader, chunkSize, chunkCount).inputStream();
+    }
+
+    @Override
+    public long copyTo(OutputStream out) throws IOException {
+        try (InputStream in = inputStream()) {
+            return IOUtils.copy(in, out);
+        }
+    }
+
+    @Override
+    public Reader getReader() throws IOException {
+        return getReader(DEFAULT_CHARSET_UTF8);
+    }
+
+    @Override
+    public Reader getReader(Charset charset) throws IOException {
+        return new InputStreamReader(inputStream(), charset);
+    }
+
+    /**
+     * Reads ahead of the consumer of the provided InputStream on another
+     * thread, using the default ExecutorService of
+     * {@link ConcurrentGeneratorResource}.
+     * <p>
+     * The provided InputStream is closed when the returned InputStream is
+     * closed.
+     *
+     * @param source The InputStream to read ahead of the consumer.
+     * @param chunkSize The number of bytes read from the provided InputStream
+     * at a time.
+     * @param chunkCount The number of chunks that can be read ahead of the
+     * consumer.
+     * @return an InputStream of the provided InputStream's bytes.
+     * @throws IOException if there is an issue in starting the read ahead
+     * thread.
+     */
+    public static InputStream prefetch(InputStream source, int chunkSize, int chunkCount) throws IOException {
+        return prefetch(null, source, chunkSize, chunkCount);
+    }
+
+    /**
+     * Reads ahead of the consumer of the provided InputStream on another
+     * thread.
+     * <p>
+     * The provided InputStream is closed when the returned InputStream is
+     * closed.
+     *
+     * @param service The executor service used to read the provided
+     * InputStream. If null, the default of {@link ConcurrentGeneratorResource}
+     * is used.
+     * @param source The InputStream to read ahead of the consumer.
+     * @param chunkSize The number of bytes read from the provided InputStream
+     * at a time.
+     * @param chunkCount The number of chunks that can be read ahead of the
+     * consumer.
+     * @return an InputStream of the provided InputStream's bytes.
+     * @throws IOException if there is an issue in starting the read ahead
+     * thread.
+     */
+    public static InputStream prefetch(ExecutorService service, InputStream source, int chunkSize, int chunkCount) throws IOException {
+        checkChunkArgs(chunkSize, chunkCount);
+        Generator reader = out -> copyChunks(source, out, chunkSize);
+        InputStream prefetchIn = createResource(service, reader, chunkSize, chunkCount).inputStream();
+        return new FilterInputStream(prefetchIn) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    source.close();
+                }
+            }
+        };
+    }
+
+    private static ConcurrentGeneratorResource createResource(ExecutorService service, Generator generator, int chunkSize, int chunkCount) {
+        int bufferSize = chunkSize * chunkCount;
+        if (service == null) {
+            return new ConcurrentGeneratorResource(generator, bufferSize);
+        }
+        return new ConcurrentGeneratorResource(service, generator, bufferSize);
+    }
+
+    private static void copyChunks(InputStream in, OutputStream out, int chunkSize) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int n;
+        while (-1 != (n = in.read(chunk))) {
+            out.write(chunk, 0, n);
+        }
+        out.flush();
+    }
+}
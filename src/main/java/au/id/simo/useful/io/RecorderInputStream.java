@@ -72,6 +72,17 @@ public class RecorderInputStream extends FilterInputStream {
         return byteRead;
     }
 
+    @Override
+    public long skip(long n) throws IOException {
+        // read rather than skip, so skipped bytes are recorded.
+        return IOUtils.skipFully(this, n);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
     private void endStreamIfRequired() {
         if (!streamEnded) {
             streamEnded = true;
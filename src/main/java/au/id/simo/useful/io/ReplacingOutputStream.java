@@ -0,0 +1,184 @@
+package au.id.simo.useful.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import au.id.simo.useful.io.DetectionInputStream.Match;
+
+/**
+ * An OutputStream that replaces series of bytes as they are written, before
+ * passing them on to the underlying OutputStream.
+ * <p>
+ * The output side counterpart to {@link MultiDetectionInputStream}, with the
+ * same Match semantics: a filtered match is replaced with the replacement
+ * bytes of its Match, which may be of any length. Matches never overlap, and
+ * when the bytes of one match overlap another, the match that ends first is
+ * acted on.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * try (OutputStream out = new ReplacingOutputStream(fileOut, Arrays.asList(
+ *         Match.replace("${version}".getBytes(UTF_8), versionBytes),
+ *         Match.replace("\r\n".getBytes(UTF_8), "\n".getBytes(UTF_8))
+ * ))) {
+ *     template.copyTo(out);
+ * }
+ * </pre>
+ * <p>
+ * Memory use is bounded by the longest match bytes. Bytes are held back only
+ * while they may still be the start of a match, so {@link #flush()} does not
+ * write them. They are written by {@link #finish()} or {@link #close()}.
+ */
+public class ReplacingOutputStream extends FilterOutputStream {
+
+    private final Match[] matches;
+    private final ByteAutomaton automaton;
+    /**
+     * Bytes written that may still be the start of a match.
+     */
+    private final byte[] pending;
+    private int pendingLength;
+    private int state;
+    private boolean finished;
+
+    /**
+     * Creates a stream replacing a single series of bytes.
+     *
+     * @param out the OutputStream to write to.
+     * @param search the bytes to replace.
+     * @param replacement the bytes written in their place.
+     */
+    public ReplacingOutputStream(OutputStream out, byte[] search, byte[] replacement) {
+        this(out, Collections.singletonList(Match.replace(search, replacement)));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out the OutputStream to write to.
+     * @param matches the bytes to detect, and what to do when each is
+     * detected. If the same bytes are in more than one Match, only the first
+     * is used.
+     * @throws IllegalArgumentException if there are no matches, or any match
+     * has no bytes.
+     */
+    public ReplacingOutputStream(OutputStream out, List<Match> matches) {
+        super(out);
+        this.matches = matches.toArray(new Match[0]);
+        List<byte[]> patterns = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            patterns.add(match.getMatchBytes());
+        }
+        this.automaton = new ByteAutomaton(patterns);
+        this.pending = new byte[automaton.getMaxPatternLength()];
+        this.state = ByteAutomaton.START;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (finished) {
+            throw new IOException("Stream is finished");
+        }
+        int end = off + len;
+        // bytes of b from unwritten onwards come after the pending bytes, and
+        // have not been written yet.
+        int unwritten = off;
+        int s = state;
+        for (int i = off; i < end; i++) {
+            s = automaton.next(s, b[i]);
+            int found = automaton.match(s);
+            if (found < 0) {
+                continue;
+            }
+            Match match = matches[found];
+            int matchLength = match.getMatchBytes().length;
+            writeBefore(b, unwritten, i + 1, matchLength);
+            byte[] replaceWith = match.onMatch();
+            out.write(replaceWith == null ? match.getMatchBytes() : replaceWith);
+            s = ByteAutomaton.START;
+            unwritten = i + 1;
+        }
+        state = s;
+        // hold back only the bytes that may still be the start of a match
+        int keep = automaton.depth(s);
+        int inB = end - unwritten;
+        if (keep <= inB) {
+            writePending(pendingLength);
+            out.write(b, unwritten, inB - keep);
+            System.arraycopy(b, end - keep, pending, 0, keep);
+            pendingLength = keep;
+        } else {
+            int keepPending = keep - inB;
+            writePending(pendingLength - keepPending);
+            System.arraycopy(b, unwritten, pending, pendingLength, inB);
+            pendingLength += inB;
+        }
+    }
+
+    /**
+     * Writes the pending bytes and bytes of b before a match, where the match
+     * is the last matchLength bytes of the pending bytes followed by b from
+     * unwritten to matchEnd. The pending bytes are then empty.
+     */
+    private void writeBefore(byte[] b, int unwritten, int matchEnd, int matchLength) throws IOException {
+        int inB = matchEnd - unwritten;
+        if (matchLength <= inB) {
+            writePending(pendingLength);
+            out.write(b, unwritten, inB - matchLength);
+        } else {
+            writePending(pendingLength - (matchLength - inB));
+        }
+        pendingLength = 0;
+    }
+
+    /**
+     * Writes the first count pending bytes, moving the rest to the start.
+     */
+    private void writePending(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        out.write(pending, 0, count);
+        System.arraycopy(pending, count, pending, 0, pendingLength - count);
+        pendingLength -= count;
+    }
+
+    /**
+     * Writes any bytes held back, as no more bytes will be written to
+     * complete a match, without closing the underlying stream. No more bytes
+     * can be written afterwards.
+     *
+     * @throws IOException if there is any error writing the held back bytes.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        writePending(pendingLength);
+        state = ByteAutomaton.START;
+    }
+
+    /**
+     * Writes any bytes held back, then closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try (OutputStream o = out) {
+            finish();
+            o.flush();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -22,6 +24,12 @@ import java.nio.charset.StandardCharsets;
  * All character related methods ({@code getReader()})
  * assume UTF-8 as the character encoding, unless another {@link Charset} is
  * provided.
+ * <p>
+ * The asynchronous methods ({@code copyToAsync()} and {@code readAllAsync()})
+ * return a {@link CompletableFuture}, which is completed exceptionally with the
+ * IOException if the read fails. By default they run the blocking methods on
+ * the provided {@link Executor}, implementations that can read without
+ * blocking a thread, such as {@link FileResource}, override them.
  */
 public interface Resource {
 
@@ -78,6 +86,32 @@ public interface Resource {
         }
     }
 
+    /**
+     * Asynchronously copies bytes from this instance's InputStream to the
+     * OutputStream provided.
+     *
+     * @param out Underlying bytes this resource refers to is written to this
+     * OutputStream
+     * @param executor The Executor used to perform any blocking reads and
+     * writes.
+     * @return a future of the number of bytes written to the provided
+     * OutputStream.
+     * @see #copyTo(java.io.OutputStream)
+     */
+    default CompletableFuture<Long> copyToAsync(OutputStream out, Executor executor) {
+        return IOUtils.callAsync(() -> copyTo(out), executor);
+    }
+
+    /**
+     * Asynchronously reads all the bytes of this resource in to memory.
+     *
+     * @param executor The Executor used to perform any blocking reads.
+     * @return a future of all the bytes of this resource.
+     */
+    default CompletableFuture<byte[]> readAllAsync(Executor executor) {
+        return IOUtils.callAsync(() -> IOUtils.getBytes(this), executor);
+    }
+
     /**
      * Creates an InputStream to read the contents of the resource.
      *
@@ -0,0 +1,297 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the data of many Resources in memory, within a single shared byte
+ * budget.
+ * <p>
+ * Unlike {@link CachedResource}, which caches a single Resource with no regard
+ * for any other, the Resources returned by {@link #cache(Resource)} all share
+ * the budget of this ResourceCache. When storing newly read data would exceed
+ * the budget, the least recently used entries are evicted. Evicted Resources
+ * are read again from the underlying Resource the next time they are used.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * ResourceCache cache = new ResourceCache(64 * 1024 * 1024);
+ * Resource logo = cache.cache(new FileResource("images/logo.png"));
+ * Resource style = cache.cache(new URLResource(styleUrl));
+ * </pre>
+ * <p>
+ * Data is recorded as the underlying Resource is read, and only stored once
+ * the end of the stream is reached. Entries larger than the maximum entry
+ * size are never stored.
+ * <p>
+ * All methods are thread safe. Hit, miss and eviction counts along with the
+ * number of bytes cached are aggregated across all the Resources of this
+ * cache.
+ */
+public class ResourceCache {
+
+    private final long maxBytes;
+    private final int maxEntrySize;
+
+    private final Object lock;
+    /**
+     * In access order, so the first entry is the least recently used.
+     */
+    private final LinkedHashMap<CacheEntry, byte[]> entries;
+    private long cachedBytes;
+    /**
+     * Incremented on clear, guarded by the lock.
+     */
+    private long epoch;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes the maximum number of bytes to cache across all
+     * Resources.
+     */
+    public ResourceCache(long maxBytes) {
+        this(maxBytes, (int) Math.min(maxBytes, ByteBundle.MAX_ARRAY_SIZE));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes the maximum number of bytes to cache across all
+     * Resources.
+     * @param maxEntrySize the maximum number of bytes to cache for a single
+     * Resource. Larger Resources are always read from the underlying Resource.
+     * @throws IllegalArgumentException if either argument is negative, or
+     * maxEntrySize is greater than maxBytes.
+     */
+    public ResourceCache(long maxBytes, int maxEntrySize) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes cannot be negative");
+        }
+        if (maxEntrySize < 0) {
+            throw new IllegalArgumentException("maxEntrySize cannot be negative");
+        }
+        if (maxEntrySize > maxBytes) {
+            throw new IllegalArgumentException("maxEntrySize cannot be greater than maxBytes");
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntrySize = maxEntrySize;
+        this.lock = new Object();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Wraps the provided Resource so that its data is cached within the
+     * budget of this ResourceCache.
+     * <p>
+     * Each call returns a new Resource with its own cache entry, so the
+     * returned Resource should be kept and reused.
+     *
+     * @param resource the Resource to cache.
+     * @return a Resource that reads from this cache when possible.
+     */
+    public Resource cache(Resource resource) {
+        return new CacheEntry(resource);
+    }
+
+    /**
+     * Removes the cached data of the provided Resource, so the next read is
+     * from the underlying Resource.
+     *
+     * @param cachedResource a Resource returned by {@link #cache(Resource)}.
+     */
+    public void invalidate(Resource cachedResource) {
+        if (!(cachedResource instanceof CacheEntry)) {
+            return;
+        }
+        CacheEntry entry = (CacheEntry) cachedResource;
+        synchronized (lock) {
+            entry.generation++;
+            byte[] removed = entries.remove(entry);
+            if (removed != null) {
+                cachedBytes -= removed.length;
+            }
+        }
+    }
+
+    /**
+     * Removes all cached data. Statistics are not reset.
+     */
+    public void clear() {
+        synchronized (lock) {
+            epoch++;
+            entries.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    /**
+     * Looks up the cached data of an entry, marking it as recently used.
+     */
+    private byte[] get(CacheEntry entry) {
+        synchronized (lock) {
+            return entries.get(entry);
+        }
+    }
+
+    /**
+     * Stores the data of an entry, evicting the least recently used entries
+     * to stay within the budget.
+     *
+     * @param generation the generation of the entry when the read started,
+     * data is discarded if the entry has since been invalidated.
+     * @param startEpoch the epoch of the cache when the read started, data is
+     * discarded if the cache has since been cleared.
+     */
+    private void put(CacheEntry entry, long generation, long startEpoch, byte[] data) {
+        synchronized (lock) {
+            if (entry.generation != generation || epoch != startEpoch) {
+                return;
+            }
+            byte[] old = entries.remove(entry);
+            if (old != null) {
+                cachedBytes -= old.length;
+            }
+            Iterator<Map.Entry<CacheEntry, byte[]>> lru = entries.entrySet().iterator();
+            while (cachedBytes + data.length > maxBytes && lru.hasNext()) {
+                Map.Entry<CacheEntry, byte[]> evict = lru.next();
+                cachedBytes -= evict.getValue().length;
+                lru.remove();
+                evictions.incrementAndGet();
+            }
+            entries.put(entry, data);
+            cachedBytes += data.length;
+        }
+    }
+
+    /**
+     * @return the maximum number of bytes cached across all Resources.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes currently cached.
+     */
+    public long getCachedBytes() {
+        synchronized (lock) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * @return the number of Resources that currently have cached data.
+     */
+    public int getEntryCount() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of reads served from cached data.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of reads of underlying Resources.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries removed to make room for others.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts.
+     */
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * A Resource whose data is cached in the enclosing ResourceCache. Uses
+     * identity equality as the key of its cached data.
+     */
+    private class CacheEntry extends FilterResource {
+
+        /**
+         * Incremented on invalidation, guarded by the cache lock.
+         */
+        private long generation;
+
+        CacheEntry(Resource resource) {
+            super(resource);
+        }
+
+        @Override
+        public InputStream inputStream() throws IOException {
+            byte[] data = get(this);
+            if (data != null) {
+                hits.incrementAndGet();
+                return new ByteArrayInputStream(data);
+            }
+            misses.incrementAndGet();
+            long startGeneration;
+            long startEpoch;
+            synchronized (lock) {
+                startGeneration = generation;
+                startEpoch = epoch;
+            }
+            InputStream in = resource.inputStream();
+            if (maxEntrySize == 0) {
+                return in;
+            }
+            RecorderInputStream rin = new RecorderInputStream(in, maxEntrySize);
+            rin.onEndStream(bytes -> {
+                if (!rin.isExceededBuffer()) {
+                    put(this, startGeneration, startEpoch, bytes);
+                }
+            });
+            return rin;
+        }
+
+        @Override
+        public long copyTo(OutputStream out) throws IOException {
+            try (InputStream in = inputStream()) {
+                return IOUtils.copy(in, out);
+            }
+        }
+
+        @Override
+        public Reader getReader() throws IOException {
+            return getReader(DEFAULT_CHARSET_UTF8);
+        }
+
+        @Override
+        public Reader getReader(Charset charset) throws IOException {
+            return new InputStreamReader(inputStream(), charset);
+        }
+    }
+}
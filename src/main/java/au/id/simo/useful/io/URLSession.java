@@ -2,10 +2,14 @@ package au.id.simo.useful.io;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Provides a way to temporarily arrange resources for the purpose of rendering
@@ -149,6 +153,40 @@ public interface URLSession extends Closeable {
         return resource.inputStream();
     }
 
+    /**
+     * Asynchronously copies the resource registered to the provided path to
+     * the provided OutputStream.
+     * <p>
+     * Allows many registered resources to be served concurrently, using the
+     * {@link Resource#copyToAsync(java.io.OutputStream, java.util.concurrent.Executor)}
+     * of the registered resource.
+     *
+     * @param path the path the requested resource was registered to, relative
+     * to the session base URL.
+     * @param out the resource's bytes are written to this OutputStream.
+     * @param executor the Executor used to perform any blocking reads and
+     * writes.
+     * @return a future of the number of bytes written. Completed exceptionally
+     * with an IOException if no resource is registered on the provided path,
+     * or if this session has been closed.
+     */
+    default CompletableFuture<Long> copyToAsync(String path, OutputStream out, Executor executor) {
+        CompletableFuture<Long> failed = new CompletableFuture<>();
+        try {
+            if (isClosed()) {
+                throw new IOException(SESSION_CLOSE_MSG);
+            }
+            Resource resource = getResource(path);
+            if (resource == null) {
+                throw new FileNotFoundException("No resource registered on path: " + path);
+            }
+            return resource.copyToAsync(out, executor);
+        } catch (IOException ex) {
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
     /**
      * Obtain a set of relative paths that have been registered with this
      * URLSession.
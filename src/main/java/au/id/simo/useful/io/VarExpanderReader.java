@@ -1,194 +1,556 @@
 package au.id.simo.useful.io;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
-import au.id.simo.useful.collections.CharRingBuffer;
+import au.id.simo.useful.text.VarTemplate;
 
 /**
- *
+ * A Reader that expands variables in the characters read from an underlying
+ * Reader.
+ * <p>
+ * A variable is the prefix, followed by a name made of acceptable variable
+ * name characters, followed by the suffix. When there is no suffix, the name
+ * ends at the first character that is not an acceptable variable name
+ * character. Variables with no value are removed. When a prefix is not
+ * followed by a complete variable, it is read as is.
+ * <p>
+ * The underlying Reader is read in blocks, which are scanned for the prefix.
+ * Spans of characters before a prefix are copied to the consumer in bulk, and
+ * values are copied directly from the variable map, so no buffer is sized to
+ * the largest value.
+ * <p>
+ * Values can instead be provided by a {@link Resolver}, which is only asked
+ * for the value of variables that are referenced. A Resolver can provide a
+ * value as a Reader, which is streamed to the consumer without holding the
+ * whole value in memory.
+ * <p>
+ * To expand the same template many times, see
+ * {@link #compile(Reader, String, String)}.
  */
 public class VarExpanderReader extends Reader {
 
-    private final Map<String, String> varMap;
-    private final Reader reader;
-    private final CharRingBuffer buffer;
-    private final StringBuilder varNameBuf;
-    private final String prefix;
-    private final String suffix;
+    /**
+     * The default number of characters read from the underlying Reader at a
+     * time.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
 
-    private State state;
+    private final Resolver resolver;
+    private final Scanner scanner;
 
     /**
-     * While a value is being written to the buffer it is stored here until
-     * complete.
+     * Characters provided to the consumer before any more from the scanner,
+     * null if none.
      */
-    private String varValue;
-    private int varValueIndex;
+    private CharSequence value;
+    private int valueIndex;
+    /**
+     * A value streamed to the consumer before any more from the scanner, null
+     * if none.
+     */
+    private Reader valueReader;
 
     public VarExpanderReader(Reader in, Map<String, String> variableMap, String varPrefix, String varSuffix) {
-        varMap = variableMap;
-        prefix = varPrefix;
-        suffix = varSuffix;
-        state = State.NORMAL;
-
-        // create input buffer at the maximum length of the largest var key plus
-        // variable prefix/suffix markers.
-        // create output buffer at the maximum length of the largest var value
-        int maxVarKeyLength = 0;
-        int maxVarValueLength = 0;
-        for (Entry<String, String> entry : variableMap.entrySet()) {
-            maxVarKeyLength = Math.max(maxVarKeyLength, entry.getKey().length());
-            maxVarValueLength = Math.max(maxVarValueLength, entry.getValue().length());
-        }
-
-        // make sure mark is supported
-        if (in.markSupported()) {
-            reader = in;
-        } else {
-            reader = new BufferedReader(in, maxVarKeyLength + prefix.length() + suffix.length());
-        }
+        this(in, variableMap, varPrefix, varSuffix, DEFAULT_BLOCK_SIZE);
+    }
 
-        varNameBuf = new StringBuilder(maxVarKeyLength);
-        buffer = new CharRingBuffer(maxVarValueLength + 1);
+    public VarExpanderReader(Reader in, Resolver resolver, String varPrefix, String varSuffix) {
+        this(in, resolver, varPrefix, varSuffix, DEFAULT_BLOCK_SIZE);
     }
 
     /**
-     * Fills the ring buffer with as many characters as will fit without
-     * overwriting any.
+     * Constructor.
      *
-     * @return true if underlying reader is at end of stream
-     * @throws IOException if there was an exception thrown while reading from
-     * the underlying reader.
+     * @param in the Reader to expand the variables of.
+     * @param variableMap variable names to values.
+     * @param varPrefix the characters starting a variable.
+     * @param varSuffix the characters ending a variable, may be null if the
+     * variable name ends at the first unacceptable variable name character.
+     * @param blockSize the number of characters to read from the underlying
+     * Reader at a time.
+     * @throws IllegalArgumentException if the prefix or suffix is empty, or
+     * blockSize is not positive.
      */
-    private boolean fillBuffer() throws IOException {
-        while (buffer.isNotFull()) {
-            if (varValue != null && varValueIndex <= varValue.length()) {
-                // there is a value to write. Do this first.
-                buffer.put(varValue.charAt(varValueIndex++));
-                // reset varValue ready to resume reading from reader next loop.
-                if (varValueIndex == varValue.length()) {
-                    varValue = null;
-                    varValueIndex = 0;
-                }
-                continue;
-            }
-            // no var value to write, so read from reader instead.
-            int cInt = reader.read();
-            if (cInt == -1) {
-                return true;
-            }
-            char c = (char) cInt;
-            switch (state) {
-                // This state means the prefix has already been read and skipped.
-                case VARNAME:
-                    // check if variable suffix is next and skip it or not.
-                    if (suffix != null && isNextSeq(c, suffix, reader)) {
-                        // suffix marks the end of the var name
-                        // skip the suffix
-                        reader.skip(suffix.length() - 1);
-                    } else if (isAcceptableVarNameChar(c)) {
-                        // add an acceptable char to end the var name
-                        varNameBuf.append(c);
-
-                        if (suffix == null) {
-                            // check for end of stream for ext char.
-                            reader.mark(1);
-                            if (reader.read() != -1) {
-                                reader.reset();
-                                break;
-                            }
-                        } else {
-                            break;
-                        }
-                    }
+    public VarExpanderReader(Reader in, Map<String, String> variableMap, String varPrefix, String varSuffix, int blockSize) {
+        this(in, Resolver.of(variableMap::get), varPrefix, varSuffix, blockSize);
+    }
 
-                    // end the variable name reading and lookup the value
-                    String varName = varNameBuf.toString();
-                    // clean variable name buffer
-                    varNameBuf.delete(0, varNameBuf.length() - 1);
-                    varValue = varMap.get(varName);
-                    break;
-                case NORMAL:
-                    if (isNextSeq(c, prefix, reader)) {
-                        reader.skip(prefix.length() - 1);
-                        state = State.VARNAME;
-                        break;
-                    }
-                    buffer.put(c);
+    /**
+     * Constructor.
+     *
+     * @param in the Reader to expand the variables of.
+     * @param resolver provides the value of each variable as it is read.
+     * @param varPrefix the characters starting a variable.
+     * @param varSuffix the characters ending a variable, may be null if the
+     * variable name ends at the first unacceptable variable name character.
+     * @param blockSize the number of characters to read from the underlying
+     * Reader at a time.
+     * @throws IllegalArgumentException if the prefix or suffix is empty, or
+     * blockSize is not positive.
+     */
+    public VarExpanderReader(Reader in, Resolver resolver, String varPrefix, String varSuffix, int blockSize) {
+        super(in);
+        this.resolver = resolver;
+        this.scanner = new Scanner(in, varPrefix, varSuffix, blockSize) {
+            @Override
+            boolean isNameChar(char c) {
+                return isAcceptableVarNameChar(c);
             }
-        }
-        return false;
+        };
     }
 
     protected boolean isAcceptableVarNameChar(char c) {
         return c == '_' || Character.isLetterOrDigit(c);
     }
 
-    protected boolean isNextSeq(char currentChar, CharSequence expectedSeq, Reader reader) throws IOException {
-        reader.mark(expectedSeq.length());
-        if (currentChar != expectedSeq.charAt(0)) {
-            return false;
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > cbuf.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
         }
-        try {
-            for (int i = 1; i < expectedSeq.length(); i++) {
-                int nextCharInt = reader.read();
-                if (nextCharInt == -1) {
-                    return false;
-                }
-                char nextChar = (char) nextCharInt;
-                if (expectedSeq.charAt(i) != nextChar) {
-                    return false;
+        int totalRead = 0;
+        while (totalRead < len) {
+            if (value != null) {
+                totalRead += readValue(cbuf, off + totalRead, len - totalRead);
+                continue;
+            }
+            if (valueReader != null) {
+                int readCount = valueReader.read(cbuf, off + totalRead, len - totalRead);
+                if (readCount == -1) {
+                    closeValueReader();
+                } else {
+                    totalRead += readCount;
                 }
+                continue;
+            }
+            // only block for more characters when none have been read yet
+            int next = scanner.next(totalRead == 0 || scanner.in.ready());
+            if (next == Scanner.LITERAL) {
+                int count = Math.min(len - totalRead, scanner.spanEnd - scanner.pos);
+                System.arraycopy(scanner.buf, scanner.pos, cbuf, off + totalRead, count);
+                scanner.pos += count;
+                totalRead += count;
+            } else if (next == Scanner.TEXT) {
+                setValue(scanner.text);
+            } else if (next == Scanner.VARIABLE) {
+                resolve(scanner.text);
+            } else {
+                break;
             }
-            return true;
-        } finally {
-            reader.reset();
         }
-    }
-
-    @Override
-    public int read(char[] cbuf, int off, int len) throws IOException {
-        int totalRead = 0;
-        boolean eos = false;
-        while (totalRead < len && !eos) {
-            eos = fillBuffer();
-            int readCount = buffer.read(cbuf, totalRead, len - totalRead);
-            totalRead += readCount;
-        }
-        // check if end of stream
-        if (eos && totalRead == 0) {
+        if (totalRead == 0) {
             return -1;
         }
         return totalRead;
     }
 
+    private void resolve(String varName) throws IOException {
+        if (resolver instanceof CharSequenceResolver) {
+            setValue(((CharSequenceResolver) resolver).get(varName));
+        } else {
+            valueReader = resolver.open(varName);
+        }
+    }
+
+    private void closeValueReader() throws IOException {
+        try (Reader r = valueReader) {
+            valueReader = null;
+        }
+    }
+
+    private void setValue(CharSequence chars) {
+        if (chars != null && chars.length() > 0) {
+            value = chars;
+            valueIndex = 0;
+        }
+    }
+
+    private int readValue(char[] cbuf, int off, int len) {
+        int count = Math.min(len, value.length() - valueIndex);
+        if (value instanceof String) {
+            ((String) value).getChars(valueIndex, valueIndex + count, cbuf, off);
+        } else {
+            for (int i = 0; i < count; i++) {
+                cbuf[off + i] = value.charAt(valueIndex + i);
+            }
+        }
+        valueIndex += count;
+        if (valueIndex == value.length()) {
+            value = null;
+        }
+        return count;
+    }
+
     @Override
     public int read() throws IOException {
-        if (buffer.isNotEmpty()) {
-            return buffer.read();
+        if (value == null && valueReader == null && scanner.pos < scanner.spanEnd) {
+            return scanner.buf[scanner.pos++];
         }
-        boolean eos = fillBuffer();
-        if (eos && buffer.isEmpty()) {
+        char[] single = new char[1];
+        if (read(single, 0, 1) == -1) {
             return -1;
         }
-        return buffer.read();
+        return single[0];
     }
 
     @Override
     public boolean ready() throws IOException {
-        return buffer.isNotEmpty();
+        return value != null || scanner.pos < scanner.limit || scanner.in.ready()
+                || (valueReader != null && valueReader.ready());
     }
 
     @Override
     public void close() throws IOException {
-        reader.close();
+        value = null;
+        try (Reader r = scanner.in) {
+            if (valueReader != null) {
+                closeValueReader();
+            }
+        }
+    }
+
+    /**
+     * Provides the values of variables, only when they are referenced.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+
+        /**
+         * Opens the value of a variable. The returned Reader is closed by the
+         * VarExpanderReader once read, or when it is closed.
+         *
+         * @param varName the name of the referenced variable.
+         * @return a Reader of the variable value, or null if the variable has
+         * no value.
+         * @throws IOException if there is any error opening the value.
+         */
+        Reader open(String varName) throws IOException;
+
+        /**
+         * @param values computes the value of a variable, or returns null if
+         * it has no value. Called each time a variable is referenced.
+         * @return a Resolver of the computed values.
+         */
+        static Resolver of(Function<String, ? extends CharSequence> values) {
+            return new CharSequenceResolver(values, false);
+        }
+
+        /**
+         * @param values computes the value of a variable, or returns null if
+         * it has no value. Called only the first time each variable is
+         * referenced.
+         * @return a Resolver of the computed values, remembering each value.
+         * Can be shared between VarExpanderReaders, including on different
+         * threads.
+         */
+        static Resolver cached(Function<String, ? extends CharSequence> values) {
+            return new CharSequenceResolver(values, true);
+        }
+    }
+
+    /**
+     * Resolves values as CharSequences, which are copied straight to the
+     * consumer rather than through a Reader.
+     */
+    private static final class CharSequenceResolver implements Resolver {
+
+        private final Function<String, ? extends CharSequence> values;
+        /**
+         * Remembered values, with no value remembered as an empty value.
+         */
+        private final Map<String, CharSequence> cache;
+
+        CharSequenceResolver(Function<String, ? extends CharSequence> values, boolean cached) {
+            this.values = values;
+            this.cache = cached ? new ConcurrentHashMap<>() : null;
+        }
+
+        CharSequence get(String varName) {
+            if (cache == null) {
+                return values.apply(varName);
+            }
+            return cache.computeIfAbsent(varName, name -> {
+                CharSequence value = values.apply(name);
+                return value == null ? "" : value;
+            });
+        }
+
+        @Override
+        public Reader open(String varName) {
+            CharSequence value = get(varName);
+            if (value == null) {
+                return null;
+            }
+            return new StringReader(value.toString());
+        }
+    }
+
+    /**
+     * Parses a template once, so it can be expanded many times with different
+     * variable values, without scanning it again.
+     *
+     * @param template the template to parse, read to the end but not closed.
+     * @param varPrefix the characters starting a variable.
+     * @param varSuffix the characters ending a variable, may be null if the
+     * variable name ends at the first unacceptable variable name character.
+     * @return the parsed template.
+     * @throws IOException if there is any error reading the template.
+     * @throws IllegalArgumentException if the prefix or suffix is empty.
+     */
+    public static VarTemplate compile(Reader template, String varPrefix, String varSuffix) throws IOException {
+        Scanner scanner = new Scanner(template, varPrefix, varSuffix, DEFAULT_BLOCK_SIZE);
+        List<String> literals = new ArrayList<>();
+        List<String> varNames = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int next;
+        while ((next = scanner.next(true)) != Scanner.END) {
+            if (next == Scanner.LITERAL) {
+                literal.append(scanner.buf, scanner.pos, scanner.spanEnd - scanner.pos);
+                scanner.pos = scanner.spanEnd;
+            } else if (next == Scanner.TEXT) {
+                literal.append(scanner.text);
+            } else {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                varNames.add(scanner.text);
+            }
+        }
+        literals.add(literal.toString());
+        return new VarTemplate(literals, varNames);
+    }
+
+    /**
+     * @param template the template to parse.
+     * @param varPrefix the characters starting a variable.
+     * @param varSuffix the characters ending a variable, may be null.
+     * @return the parsed template.
+     * @see #compile(Reader, String, String)
+     */
+    public static VarTemplate compile(String template, String varPrefix, String varSuffix) {
+        try {
+            return compile(new StringReader(template), varPrefix, varSuffix);
+        } catch (IOException ex) {
+            // not thrown by StringReader
+            throw new UncheckedIOException(ex);
+        }
     }
 
-    private enum State {
-        NORMAL, VARNAME
+    /**
+     * Splits the characters of a Reader into literal text and variables.
+     */
+    private static class Scanner {
+
+        static final int LITERAL = 0;
+        static final int TEXT = 1;
+        static final int VARIABLE = 2;
+        static final int END = 3;
+        static final int WOULD_BLOCK = 4;
+
+        final Reader in;
+        private final String prefix;
+        private final String suffix;
+        final char[] buf;
+        /**
+         * The next character to provide.
+         */
+        int pos;
+        /**
+         * Characters from pos up to spanEnd are literal text.
+         */
+        int spanEnd;
+        /**
+         * The end of the characters read from the underlying Reader.
+         */
+        int limit;
+        private boolean endOfStream;
+        /**
+         * True when the prefix has been read, and the name is being read.
+         */
+        private boolean inName;
+        private final StringBuilder name;
+        /**
+         * The literal text for TEXT, or the variable name for VARIABLE.
+         */
+        String text;
+
+        Scanner(Reader in, String prefix, String suffix, int blockSize) {
+            if (prefix == null || prefix.isEmpty()) {
+                throw new IllegalArgumentException("Variable prefix cannot be empty");
+            }
+            if (suffix != null && suffix.isEmpty()) {
+                throw new IllegalArgumentException("Variable suffix cannot be empty, use null for none");
+            }
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("blockSize must be positive");
+            }
+            this.in = in;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            int markerLength = Math.max(prefix.length(), suffix == null ? 0 : suffix.length());
+            this.buf = new char[Math.max(blockSize, markerLength)];
+            this.name = new StringBuilder();
+        }
+
+        boolean isNameChar(char c) {
+            return c == '_' || Character.isLetterOrDigit(c);
+        }
+
+        /**
+         * Moves on to the next literal span, text or variable.
+         *
+         * @param block true if the underlying Reader can be read, which may
+         * block.
+         * @return LITERAL if there are literal characters from pos to spanEnd,
+         * TEXT or VARIABLE with text set, END if the end of the underlying
+         * Reader has been reached, or WOULD_BLOCK if more characters are
+         * needed and block is false.
+         * @throws IOException if there is any error reading the underlying
+         * Reader.
+         */
+        int next(boolean block) throws IOException {
+            while (true) {
+                if (pos < spanEnd) {
+                    return LITERAL;
+                }
+                if (inName) {
+                    int result = nextName(block);
+                    if (result >= 0) {
+                        return result;
+                    }
+                    continue;
+                }
+                if (pos == limit) {
+                    if (endOfStream) {
+                        return END;
+                    }
+                    if (!block) {
+                        return WOULD_BLOCK;
+                    }
+                    fillBuffer();
+                    continue;
+                }
+                char first = prefix.charAt(0);
+                int i = pos;
+                while (i < limit && buf[i] != first) {
+                    i++;
+                }
+                if (i > pos) {
+                    spanEnd = i;
+                    return LITERAL;
+                }
+                if (limit - pos < prefix.length() && !endOfStream) {
+                    if (!block) {
+                        return WOULD_BLOCK;
+                    }
+                    fillBuffer();
+                    continue;
+                }
+                if (startsWith(prefix)) {
+                    pos += prefix.length();
+                    inName = true;
+                } else {
+                    spanEnd = pos + 1;
+                }
+            }
+        }
+
+        /**
+         * Reads the variable name.
+         *
+         * @return TEXT or VARIABLE when the name has ended, WOULD_BLOCK if
+         * more characters are needed and block is false, or -1 if more
+         * characters have been read into the buffer.
+         */
+        private int nextName(boolean block) throws IOException {
+            if (pos == limit && !endOfStream) {
+                if (!block) {
+                    return WOULD_BLOCK;
+                }
+                fillBuffer();
+                return -1;
+            }
+            if (suffix != null && pos < limit && buf[pos] == suffix.charAt(0)) {
+                if (limit - pos < suffix.length() && !endOfStream) {
+                    if (!block) {
+                        return WOULD_BLOCK;
+                    }
+                    fillBuffer();
+                    return -1;
+                }
+                if (startsWith(suffix)) {
+                    pos += suffix.length();
+                    return endName(VARIABLE);
+                }
+            }
+            int i = pos;
+            // stop before a possible suffix, unless it was found not to be one
+            while (i < limit && isNameChar(buf[i])
+                    && (suffix == null || i == pos || buf[i] != suffix.charAt(0))) {
+                i++;
+            }
+            if (i > pos || (i == limit && !endOfStream)) {
+                name.append(buf, pos, i - pos);
+                pos = i;
+                return -1;
+            }
+            // a character that cannot be part of the name, or end of stream
+            if (suffix == null && name.length() > 0) {
+                return endName(VARIABLE);
+            }
+            name.insert(0, prefix);
+            return endName(TEXT);
+        }
+
+        private int endName(int result) {
+            text = name.toString();
+            name.setLength(0);
+            inName = false;
+            return result;
+        }
+
+        private boolean startsWith(String seq) {
+            if (limit - pos < seq.length()) {
+                return false;
+            }
+            for (int i = 0; i < seq.length(); i++) {
+                if (buf[pos + i] != seq.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads another block from the underlying Reader, after any unread
+         * characters.
+         */
+        private void fillBuffer() throws IOException {
+            if (pos == limit) {
+                pos = 0;
+                limit = 0;
+            } else if (limit == buf.length) {
+                // make room by moving the unread characters to the start
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            spanEnd = pos;
+            int readCount = in.read(buf, limit, buf.length - limit);
+            if (readCount == -1) {
+                endOfStream = true;
+            } else {
+                limit += readCount;
+            }
+        }
     }
 }
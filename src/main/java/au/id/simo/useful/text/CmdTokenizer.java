@@ -1,16 +1,37 @@
 package au.id.simo.useful.text;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Breaks a command string into tokens based on white space, while respecting
  * quotes.
+ * <p>
+ * Tokens without quotes can be provided as views of the command, see
+ * {@link #sequenceIterator()}, so no characters are copied. Only tokens with
+ * quotes are copied, to remove the quote characters.
  */
 public class CmdTokenizer implements Iterable<String> {
 
+    /**
+     * The number of commands tokenized at a time by each thread of
+     * {@link #toLists(List, Executor, int)}.
+     */
+    private static final int BATCH_SIZE = 64;
+    private static final int READ_BUFFER_SIZE = 8192;
+
     public static List<String> toList(String command) {
         CmdTokenizer tokenizer = new CmdTokenizer(command);
         return tokenizer.toList();
@@ -21,9 +42,127 @@ public class CmdTokenizer implements Iterable<String> {
         return tokenizer.iterator();
     }
 
-    private final String command;
+    /**
+     * Tokenizes many commands, spread over the threads of an Executor along
+     * with the calling thread.
+     * <p>
+     * If the Executor rejects the work, the remaining commands are tokenized
+     * on the calling thread.
+     *
+     * @param commands the commands to tokenize.
+     * @param executor the Executor to tokenize on.
+     * @param maxParallel the maximum number of threads to tokenize on at
+     * once, including the calling thread.
+     * @return the tokens of each command, in the same order as the commands.
+     * @throws InterruptedException if interrupted while waiting for the other
+     * threads to finish. Commands not yet started are then skipped.
+     * @throws IllegalArgumentException if maxParallel is not positive.
+     * @throws RuntimeException if thrown while tokenizing on any thread, once
+     * the other threads have stopped.
+     */
+    public static List<List<String>> toLists(List<? extends CharSequence> commands, Executor executor, int maxParallel) throws InterruptedException {
+        if (maxParallel <= 0) {
+            throw new IllegalArgumentException("maxParallel must be positive");
+        }
+        List<String>[] results = newResults(commands.size());
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int batchCount = (commands.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        // the calling thread is one of the threads
+        int workerCount = Math.max(0, Math.min(maxParallel, batchCount) - 1);
+        CountDownLatch finished = new CountDownLatch(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        tokenizeBatches(commands, results, next, cancelled);
+                    } catch (RuntimeException | Error ex) {
+                        // rethrown on the calling thread, so no result is
+                        // silently left null.
+                        failure.compareAndSet(null, ex);
+                        cancelled.set(true);
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                finished.countDown();
+            }
+        }
+        try {
+            tokenizeBatches(commands, results, next, cancelled);
+            finished.await();
+        } catch (RuntimeException | Error | InterruptedException ex) {
+            cancelled.set(true);
+            throw ex;
+        }
+        Throwable workerFailure = failure.get();
+        if (workerFailure instanceof RuntimeException) {
+            throw (RuntimeException) workerFailure;
+        }
+        if (workerFailure instanceof Error) {
+            throw (Error) workerFailure;
+        }
+        return Arrays.asList(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[] newResults(int size) {
+        return (List<String>[]) new List<?>[size];
+    }
+
+    /**
+     * Takes batches of commands from the shared index and tokenizes them
+     * until none remain.
+     */
+    private static void tokenizeBatches(List<? extends CharSequence> commands, List<String>[] results, AtomicInteger next, AtomicBoolean cancelled) {
+        int start;
+        while (!cancelled.get() && (start = next.getAndAdd(BATCH_SIZE)) < results.length) {
+            int end = Math.min(start + BATCH_SIZE, results.length);
+            for (int i = start; i < end; i++) {
+                results[i] = new CmdTokenizer(commands.get(i)).toList();
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the characters of a Reader, without reading them all into
+     * memory first. Line breaks are white space like any other, so separate
+     * tokens.
+     *
+     * @param in the Reader to tokenize, read to the end but not closed.
+     * @param consumer receives each token in order.
+     * @return the number of tokens.
+     * @throws IOException if there is any error reading.
+     */
+    public static long tokenize(Reader in, Consumer<? super String> consumer) throws IOException {
+        TokenBuilder builder = new TokenBuilder();
+        char[] buf = new char[READ_BUFFER_SIZE];
+        long tokenCount = 0;
+        int readCount;
+        while ((readCount = in.read(buf)) != -1) {
+            for (int i = 0; i < readCount; i++) {
+                if (builder.accept(buf[i])) {
+                    String token = builder.take();
+                    if (token != null) {
+                        consumer.accept(token);
+                        tokenCount++;
+                    }
+                }
+            }
+        }
+        String token = builder.take();
+        if (token != null) {
+            consumer.accept(token);
+            tokenCount++;
+        }
+        return tokenCount;
+    }
+
+    private final CharSequence command;
 
-    public CmdTokenizer(String command) {
+    public CmdTokenizer(CharSequence command) {
         this.command = command;
     }
 
@@ -35,19 +174,51 @@ public class CmdTokenizer implements Iterable<String> {
         return tokList;
     }
 
+    /**
+     * @return the tokens, with tokens without quotes as views of the command.
+     * @see #sequenceIterator()
+     */
+    public List<CharSequence> toSequenceList() {
+        List<CharSequence> tokList = new ArrayList<>();
+        Iterator<CharSequence> itr = sequenceIterator();
+        while (itr.hasNext()) {
+            tokList.add(itr.next());
+        }
+        return tokList;
+    }
+
     @Override
     public Iterator<String> iterator() {
-        return new CliIterator();
+        return new StringIterator(new TokenIterator(false));
+    }
+
+    /**
+     * Iterates the tokens without copying them where possible. Tokens without
+     * quotes are {@link SubCharSequence} views of the command, so are only
+     * valid for as long as the command is not modified.
+     *
+     * @return an Iterator of the tokens.
+     */
+    public Iterator<CharSequence> sequenceIterator() {
+        return new TokenIterator(true);
     }
 
-    private class CliIterator implements Iterator<String> {
+    private class TokenIterator implements Iterator<CharSequence> {
 
-        private State state = State.NORMAL;
+        /**
+         * True to provide tokens without quotes as views, rather than Strings.
+         */
+        private final boolean views;
+        private final TokenBuilder builder = new TokenBuilder();
         private int cmdIndex = 0;
 
         private boolean hasNextCalled;
         private boolean hasNextResult;
-        private String nextCommand;
+        private CharSequence nextCommand;
+
+        TokenIterator(boolean views) {
+            this.views = views;
+        }
 
         @Override
         public boolean hasNext() {
@@ -55,65 +226,55 @@ public class CmdTokenizer implements Iterable<String> {
                 // now this method can be called repeatedly.
                 return hasNextResult;
             }
-            StringBuilder sb = new StringBuilder();
-            mainwhile:
-            while (command != null && cmdIndex < command.length()) {
-                char c = command.charAt(cmdIndex++);
-                switch (state) {
-                    case DOUBLE_QUOTE:
-                        if (c == '\"') {
-                            state = State.NORMAL;
-                        } else {
-                            sb.append(c);
-                        }
-                        break;
-                    case SINGLE_QUOTE:
-                        if (c == '\'') {
-                            state = State.NORMAL;
-                        } else {
-                            sb.append(c);
-                        }
-                        break;
-                    case BETWEEN_TOKENS:
-                        if (!Character.isWhitespace(c)) {
-                            state = State.NORMAL;
-                            // reset index and loop on this char
-                            // again with NORMAL state
-                            cmdIndex--;
-                        }
+            nextCommand = command == null ? null : nextToken();
+            hasNextResult = nextCommand != null;
+            hasNextCalled = true;
+            return hasNextResult;
+        }
+
+        /**
+         * @return the next token, or null if there are none.
+         */
+        private CharSequence nextToken() {
+            int length = command.length();
+            while (true) {
+                while (cmdIndex < length && Character.isWhitespace(command.charAt(cmdIndex))) {
+                    cmdIndex++;
+                }
+                if (cmdIndex == length) {
+                    return null;
+                }
+                int start = cmdIndex;
+                char c = 0;
+                while (cmdIndex < length) {
+                    c = command.charAt(cmdIndex);
+                    if (c == '\'' || c == '"' || Character.isWhitespace(c)) {
                         break;
-                    case NORMAL:
-                        switch (c) {
-                            case '\'':
-                                state = State.SINGLE_QUOTE;
-                                break;
-                            case '"':
-                                state = State.DOUBLE_QUOTE;
-                                break;
-                            default:
-                                if (Character.isWhitespace(c)) {
-                                    // token complete!
-                                    state = State.BETWEEN_TOKENS;
-                                    break mainwhile;
-                                } else {
-                                    sb.append(c);
-                                }
-                        }
+                    }
+                    cmdIndex++;
                 }
+                if (cmdIndex == length || Character.isWhitespace(c)) {
+                    // no quotes, so the token is exactly as in the command.
+                    if (views) {
+                        return new SubCharSequence(command, start, cmdIndex);
+                    }
+                    return command.subSequence(start, cmdIndex).toString();
+                }
+                // quotes need removing, so copy the token.
+                builder.appendUnquoted(command, start, cmdIndex);
+                while (cmdIndex < length && !builder.accept(command.charAt(cmdIndex++))) {
+                    // accept until the token ends
+                }
+                String token = builder.take();
+                if (token != null) {
+                    return token;
+                }
+                // only empty quotes, which are not a token.
             }
-            if (sb.length() > 0) {
-                nextCommand = sb.toString();
-                hasNextResult = true;
-            } else {
-                nextCommand = null;
-                hasNextResult = false;
-            }
-            hasNextCalled = true;
-            return hasNextResult;
         }
 
         @Override
-        public String next() {
+        public CharSequence next() {
             if (!hasNextCalled) {
                 hasNext();
             }
@@ -127,6 +288,103 @@ public class CmdTokenizer implements Iterable<String> {
         }
     }
 
+    private static final class StringIterator implements Iterator<String> {
+
+        private final Iterator<CharSequence> tokens;
+
+        StringIterator(Iterator<CharSequence> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return tokens.hasNext();
+        }
+
+        @Override
+        public String next() {
+            return tokens.next().toString();
+        }
+    }
+
+    /**
+     * Builds a token from one character at a time, removing quotes.
+     */
+    private static final class TokenBuilder {
+
+        private final StringBuilder sb = new StringBuilder();
+        private State state = State.BETWEEN_TOKENS;
+
+        /**
+         * Starts a token with characters known to not be quotes or white
+         * space.
+         */
+        void appendUnquoted(CharSequence seq, int start, int end) {
+            sb.append(seq, start, end);
+            state = State.NORMAL;
+        }
+
+        /**
+         * @param c the next character.
+         * @return true if the character ended the token.
+         */
+        boolean accept(char c) {
+            switch (state) {
+                case DOUBLE_QUOTE:
+                    if (c == '\"') {
+                        state = State.NORMAL;
+                    } else {
+                        sb.append(c);
+                    }
+                    return false;
+                case SINGLE_QUOTE:
+                    if (c == '\'') {
+                        state = State.NORMAL;
+                    } else {
+                        sb.append(c);
+                    }
+                    return false;
+                case BETWEEN_TOKENS:
+                    if (Character.isWhitespace(c)) {
+                        return false;
+                    }
+                    state = State.NORMAL;
+                    return accept(c);
+                default:
+                    switch (c) {
+                        case '\'':
+                            state = State.SINGLE_QUOTE;
+                            return false;
+                        case '"':
+                            state = State.DOUBLE_QUOTE;
+                            return false;
+                        default:
+                            if (Character.isWhitespace(c)) {
+                                // token complete!
+                                state = State.BETWEEN_TOKENS;
+                                return true;
+                            }
+                            sb.append(c);
+                            return false;
+                    }
+            }
+        }
+
+        /**
+         * @return the token built so far, or null if empty. The builder is
+         * then empty.
+         */
+        String take() {
+            state = State.BETWEEN_TOKENS;
+            if (sb.length() == 0) {
+                return null;
+            }
+            String token = sb.toString();
+            sb.setLength(0);
+            return token;
+        }
+    }
+
     private enum State {
         NORMAL, DOUBLE_QUOTE, SINGLE_QUOTE, BETWEEN_TOKENS
     }
@@ -1,6 +1,8 @@
 package au.id.simo.useful.text;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -8,10 +10,14 @@ import java.util.Map;
  * {@code $VAR} or {@code ${VAR}}.
  * <p>
  * And variables with no found value will be simply removed.
+ * <p>
+ * To expand the same String many times with changing variable values, see
+ * {@link #compile(String)}.
  */
 public class EnvVarExpander implements VarExpander {
 
     private final Map<String, String> varMap;
+    private final TemplateCache templates = new TemplateCache(this::parse);
 
     public EnvVarExpander() {
         varMap = new HashMap<>();
@@ -36,76 +42,66 @@ public class EnvVarExpander implements VarExpander {
 
     @Override
     public String expand(String sourceStr) {
-        StringBuilder output = new StringBuilder();
-        StringBuilder varName = new StringBuilder();
-        State state = State.NORMAL;
-
-        for (int index = 0; index < sourceStr.length(); index++) {
-            char c = sourceStr.charAt(index);
-            switch (state) {
-                case BRACE_VARNAME:
-                    if (c == '}') {
-                        // end the variable name reading
-                        // and don't add the closing brace to the output.
-                        output.append(expandVar(varName));
-                        state = State.NORMAL;
-                    } else {
-                        varName.append(c);
-                    }
-                    break;
-                case VARNAME:
-                    if (isAcceptableVarNameChar(c)) {
-                        varName.append(c);
-                    } else {
-                        // end the variable name reading and lookup the value
-                        output.append(expandVar(varName));
-                        // don't forget to add the whitespace to the output
-                        output.append(c);
-                        state = State.NORMAL;
-                    }
-                    break;
-                case NORMAL:
-                    switch (c) {
-                        case '$':
-                            if (isNextChar('$', sourceStr, index)) {
-                                // ecscaped $, add one and skip the next.
-                                output.append(c);
-                                index++;
-                            } else if (isNextChar('{', sourceStr, index)) {
-                                state = State.BRACE_VARNAME;
-                                // skip adding the brace char to the output
-                                index++;
-                            } else {
-                                state = State.VARNAME;
-                            }
-                            break;
-                        default:
-                            output.append(c);
-                    }
-            }
-        }
-        // for when the variable name is the last part of the source str.
-        if (varName.length() > 0) {
-            output.append(expandVar(varName));
-        }
-        return output.toString();
-    }
-
-    private String expandVar(StringBuilder varName) {
-        String value = varMap.get(varName.toString());
-        clearSB(varName);
-        if (value == null) {
-            return "";
-        } else {
-            return value;
-        }
+        // parsed directly, so one-off Strings don't evict compiled ones.
+        return parse(sourceStr).expand(varMap);
     }
 
-    private void clearSB(StringBuilder sb) {
-        sb.delete(0, sb.length());
+    /**
+     * Parses a String once, so it can be expanded many times with different
+     * variable values. The most recently compiled Strings are cached, so
+     * compiling one of them again returns the same VarTemplate without
+     * parsing it.
+     *
+     * @param sourceStr String containing unexpanded variables
+     * @return the parsed String, to expand with any variable map.
+     */
+    public VarTemplate compile(String sourceStr) {
+        return templates.get(sourceStr);
     }
 
-    private enum State {
-        NORMAL, VARNAME, BRACE_VARNAME
+    private VarTemplate parse(String sourceStr) {
+        List<String> literals = new ArrayList<>();
+        List<String> varNames = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = sourceStr.length();
+        int index = 0;
+        while (index < length) {
+            int varStart = sourceStr.indexOf('$', index);
+            if (varStart == -1) {
+                literal.append(sourceStr, index, length);
+                break;
+            }
+            literal.append(sourceStr, index, varStart);
+            int nameStart = varStart + 1;
+            char next = nameStart < length ? sourceStr.charAt(nameStart) : 0;
+            int nameEnd;
+            if (next == '$') {
+                // escaped $, add one and skip the next.
+                literal.append('$');
+                index = nameStart + 1;
+                continue;
+            } else if (next == '{') {
+                // the name runs to the closing brace, or the end if none.
+                nameStart++;
+                nameEnd = sourceStr.indexOf('}', nameStart);
+                if (nameEnd == -1) {
+                    nameEnd = length;
+                    index = length;
+                } else {
+                    index = nameEnd + 1;
+                }
+            } else {
+                nameEnd = nameStart;
+                while (nameEnd < length && isAcceptableVarNameChar(sourceStr.charAt(nameEnd))) {
+                    nameEnd++;
+                }
+                index = nameEnd;
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            varNames.add(sourceStr.substring(nameStart, nameEnd));
+        }
+        literals.add(literal.toString());
+        return new VarTemplate(literals, varNames);
     }
 }
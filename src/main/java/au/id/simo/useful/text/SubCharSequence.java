@@ -72,6 +72,9 @@ public class SubCharSequence implements CharSequence {
      */
     @Override
     public String toString() {
-        return new StringBuilder(length()).append(this).toString();
+        if (sequence instanceof String) {
+            return ((String) sequence).substring(fromIndex, toIndex);
+        }
+        return new StringBuilder(length()).append(sequence, fromIndex, toIndex).toString();
     }
 }
@@ -0,0 +1,47 @@
+package au.id.simo.useful.text;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Compiled templates keyed by their source String.
+ * <p>
+ * Holds at most a maximum number of templates, evicting the least recently
+ * used when full. Access is synchronized, so a cache can be shared by many
+ * threads.
+ */
+final class TemplateCache {
+
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Map<String, VarTemplate> templates;
+    private final Function<String, VarTemplate> compiler;
+    private final int maxSize;
+
+    TemplateCache(Function<String, VarTemplate> compiler) {
+        this(compiler, DEFAULT_MAX_SIZE);
+    }
+
+    TemplateCache(Function<String, VarTemplate> compiler, int maxSize) {
+        // access ordered, so the first entry is the least recently used
+        this.templates = new LinkedHashMap<>(16, 0.75f, true);
+        this.compiler = compiler;
+        this.maxSize = maxSize;
+    }
+
+    synchronized VarTemplate get(String source) {
+        VarTemplate template = templates.computeIfAbsent(source, compiler);
+        Iterator<VarTemplate> eldest = templates.values().iterator();
+        while (templates.size() > maxSize) {
+            eldest.next();
+            eldest.remove();
+        }
+        return template;
+    }
+
+    synchronized int size() {
+        return templates.size();
+    }
+}
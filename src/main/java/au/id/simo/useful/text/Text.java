@@ -1,12 +1,14 @@
 package au.id.simo.useful.text;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
-import au.id.simo.useful.text.TextTable.Row;
-
 /**
  * Utility class most useful for printing text to the console.
  */
@@ -35,22 +37,85 @@ public class Text {
         print(rs, System.out);
     }
 
+    /**
+     * Prints a ResultSet as a table. Rows are printed as they are read, with
+     * the column widths fixed from the first
+     * {@link TextTableWriter#DEFAULT_SAMPLE_SIZE} rows, so any number of rows
+     * can be printed in constant memory.
+     *
+     * @param rs the ResultSet to print, read to the end.
+     * @param out where to print the table.
+     * @throws SQLException if there is any error reading the ResultSet.
+     */
     public static void print(ResultSet rs, PrintStream out) throws SQLException {
+        try {
+            print(rs, new PrintStreamWriter(out), TextTableWriter.DEFAULT_SAMPLE_SIZE);
+        } catch (IOException ex) {
+            // not thrown by PrintStream
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes a ResultSet as a table, in constant memory.
+     *
+     * @param rs the ResultSet to write, read to the end.
+     * @param out where to write the table, flushed but not closed.
+     * @param sampleSize the number of rows used to fix the column widths.
+     * Longer fields in later rows extend past their column.
+     * @throws SQLException if there is any error reading the ResultSet.
+     * @throws IOException if there is any error writing.
+     * @see TextTableWriter
+     */
+    public static void print(ResultSet rs, Writer out, int sampleSize) throws SQLException, IOException {
         ResultSetMetaData rsmeta = rs.getMetaData();
         int columnCount = rsmeta.getColumnCount();
         String[] headings = new String[columnCount];
         for (int i = 0; i < columnCount; i++) {
             headings[i] = rsmeta.getColumnName(i + 1);
         }
-        // headings
-        TextTable ct = new TextTable();
-        ct.setHeadings((Object[]) headings);
+        TextTableWriter table = new TextTableWriter(out, sampleSize, TextTableWriter.Overflow.EXTEND);
+        table.setHeadings((Object[]) headings);
+        // reused for each row, as the fields are copied by addRow
+        Object[] fields = new Object[columnCount];
         while (rs.next()) {
-            Row row = ct.newRow();
             for (int i = 0; i < columnCount; i++) {
-                row.addField(rs.getString(i + 1));
+                fields[i] = rs.getString(i + 1);
             }
+            table.addRow(fields);
+        }
+        table.flush();
+    }
+
+    /**
+     * Writes to a PrintStream, encoding with the charset of the PrintStream.
+     */
+    private static final class PrintStreamWriter extends Writer {
+
+        private final PrintStream out;
+
+        PrintStreamWriter(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            out.append(CharBuffer.wrap(cbuf, off, len));
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            out.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            out.flush();
         }
-        ct.print(out);
     }
 }
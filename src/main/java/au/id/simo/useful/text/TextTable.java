@@ -1,35 +1,56 @@
 package au.id.simo.useful.text;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-
-import au.id.simo.useful.collections.ConcatIterator;
+import java.util.NoSuchElementException;
 
 /**
  * For use when writing a table to the console, it ensures all the columns line
  * up correctly.
  * <p>
  * Add fields one row at a time, then iterate over each formatted row to print
- * them.
+ * them, or write them all with {@link #writeTo(Appendable)}.
+ * <p>
+ * Fields are stored by column rather than by row, so each row costs no more
+ * than its fields. For tables too large to hold in memory, see
+ * {@link TextTableWriter}.
  */
 public class TextTable implements Iterable<CharSequence> {
-    
+
     private static final int TAB_SIZE = 8;
-    
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /**
+     * Appended in one go, rather than a tab at a time.
+     */
+    private static final String TABS = Text.repeat('\t', 32);
+
     private final List<String> headings;
-    private final List<List<String>> rowList;
-    private final List<Integer> maxColSizeList;
+    /**
+     * The fields of each column in row order, with null where a row has no
+     * field in the column.
+     */
+    private final List<List<String>> columns;
+    /**
+     * The number of fields in each row.
+     */
+    private int[] rowFieldCounts;
+    private int rowCount;
+    private int[] maxColSizes;
 
     public TextTable() {
         this.headings = new ArrayList<>();
-        this.rowList = new ArrayList<>();
-        this.maxColSizeList = new ArrayList<>();
+        this.columns = new ArrayList<>();
+        this.rowFieldCounts = new int[16];
+        this.maxColSizes = new int[0];
     }
-    
+
     public void setHeadings(Object... colnames) {
         headings.clear();
         for (int i = 0; i < colnames.length; i++) {
@@ -38,27 +59,58 @@ public class TextTable implements Iterable<CharSequence> {
             headings.add(heading);
         }
     }
-    
+
     public void addRow(Object... fields) {
-        List<String> fieldList = new ArrayList<>(fields.length);
-        for (int i = 0; i < fields.length; i++) {
-            String fieldStr = String.valueOf(fields[i]);
-            setMaxFieldSize(i, fieldStr.length());
-            fieldList.add(fieldStr);
+        int row = addEmptyRow();
+        for (Object field : fields) {
+            addField(row, field);
+        }
+    }
+
+    /**
+     * @return the index of the new row.
+     */
+    private int addEmptyRow() {
+        if (rowCount == rowFieldCounts.length) {
+            rowFieldCounts = Arrays.copyOf(rowFieldCounts, rowCount * 2);
         }
-        rowList.add(fieldList);
+        return rowCount++;
     }
-    
+
+    private void addField(int row, Object obj) {
+        int fieldId = rowFieldCounts[row]++;
+        String fieldStr = String.valueOf(obj);
+        while (columns.size() <= fieldId) {
+            columns.add(new ArrayList<>());
+        }
+        List<String> column = columns.get(fieldId);
+        // pad for rows without a field in this column
+        while (column.size() < row) {
+            column.add(null);
+        }
+        if (column.size() == row) {
+            column.add(fieldStr);
+        } else {
+            column.set(row, fieldStr);
+        }
+        setMaxFieldSize(fieldId, fieldStr.length());
+    }
+
     private void setMaxFieldSize(int colNo, int size) {
-        // pad size of list if required.
-        for (int i = 0; i < colNo - (maxColSizeList.size()-1); i++) {
-            maxColSizeList.add(0);
+        if (colNo >= maxColSizes.length) {
+            maxColSizes = Arrays.copyOf(maxColSizes, colNo + 1);
         }
-        int existingLength = maxColSizeList.get(colNo);
-        maxColSizeList.set(colNo, Math.max(size, existingLength));
+        maxColSizes[colNo] = Math.max(size, maxColSizes[colNo]);
     }
-    
-    
+
+    /**
+     * @return the number of rows added, not including the headings.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+
     public interface Row {
         Row addField(Object obj);
     }
@@ -67,74 +119,151 @@ public class TextTable implements Iterable<CharSequence> {
      * @return a new row
      */
     public Row newRow() {
-        final List<String> fieldList = new ArrayList<>();
-        rowList.add(fieldList);
+        final int row = addEmptyRow();
         return new Row() {
             @Override
             public Row addField(Object obj) {
-                int fieldId = fieldList.size();
-                String fieldStr = String.valueOf(obj);
-                fieldList.add(fieldStr);
-                setMaxFieldSize(fieldId, fieldStr.length());
+                TextTable.this.addField(row, obj);
                 return this;
             }
         };
     }
-    
-    @Override
-    @SuppressWarnings("unchecked")
-    public Iterator<CharSequence> iterator() {
-        final Iterator<List<String>> rowsItr;
-        if (headings.isEmpty()) {
-            rowsItr = rowList.iterator();
-        } else {
-            // headings exist, so create the formatting around them
-            List<String> headingDividers = new ArrayList<>(maxColSizeList.size());
-            for (Integer integer : maxColSizeList) {
-                int colWidth = (integer / TAB_SIZE) + TAB_SIZE;
-                headingDividers.add(Text.repeat('-', colWidth));
+
+    /**
+     * @return the heading divider of each column.
+     */
+    private String[] headingDividers() {
+        String[] dividers = new String[maxColSizes.length];
+        for (int i = 0; i < maxColSizes.length; i++) {
+            int colWidth = (maxColSizes[i] / TAB_SIZE) + TAB_SIZE;
+            dividers[i] = Text.repeat('-', colWidth);
+        }
+        return dividers;
+    }
+
+    private void appendRow(Appendable out, int row) throws IOException {
+        for (int i = 0; i < rowFieldCounts[row]; i++) {
+            appendField(out, columns.get(i).get(row), i);
+        }
+    }
+
+    private void appendRow(Appendable out, List<String> fields) throws IOException {
+        for (int i = 0; i < fields.size(); i++) {
+            appendField(out, fields.get(i), i);
+        }
+    }
+
+    private void appendRow(Appendable out, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            appendField(out, fields[i], i);
+        }
+    }
+
+    private void appendField(Appendable out, String field, int colNo) throws IOException {
+        int maxTabs = maxColSizes[colNo] / TAB_SIZE;
+        int fieldTabs = field.length() / TAB_SIZE;
+        // + 1 because we always want at least one tab
+        int tabs = (maxTabs - fieldTabs) + 1;
+        out.append(field);
+        appendTabs(out, tabs);
+    }
+
+    /**
+     * Appends tabs in spans, rather than a tab at a time. Nothing is appended
+     * if count is not positive.
+     */
+    static void appendTabs(Appendable out, int count) throws IOException {
+        while (count > 0) {
+            int span = Math.min(count, TABS.length());
+            if (out instanceof Writer) {
+                // avoids the substring of Writer.append
+                ((Writer) out).write(TABS, 0, span);
+            } else {
+                out.append(TABS, 0, span);
             }
-            rowsItr = new ConcatIterator<>(
-                    Arrays.asList(headings, headingDividers).iterator(),
-                    rowList.iterator()
-            );
+            count -= span;
+        }
+    }
+
+    /**
+     * Writes every formatted row, each followed by a line separator, without
+     * building a String per row.
+     *
+     * @param out where to write the table.
+     * @throws IOException if there is any error writing.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        if (!headings.isEmpty()) {
+            appendRow(out, headings);
+            out.append(LINE_SEPARATOR);
+            appendRow(out, headingDividers());
+            out.append(LINE_SEPARATOR);
+        }
+        for (int row = 0; row < rowCount; row++) {
+            appendRow(out, row);
+            out.append(LINE_SEPARATOR);
         }
-        
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator() {
+        // headings exist, so create the formatting around them
+        final String[] headingDividers = headings.isEmpty() ? null : headingDividers();
         return new Iterator<CharSequence>() {
 
+            /**
+             * Negative while iterating the headings and their dividers.
+             */
+            private int row = headingDividers == null ? 0 : -2;
+
             @Override
             public boolean hasNext() {
-                return rowsItr.hasNext();
+                return row < rowCount;
             }
 
             @Override
             public CharSequence next() {
-                List<String> fieldList = rowsItr.next();
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
                 StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < fieldList.size(); i++) {
-                    String field = fieldList.get(i);
-                    int maxFieldLength = maxColSizeList.get(i);
-                    int maxTabs = maxFieldLength / TAB_SIZE;
-                    int fieldTabs = field.length() / TAB_SIZE;
-                    // + 1 because we always want at least one tab
-                    int tabs = (maxTabs - fieldTabs) + 1;
-                    sb.append(field);
-                    Text.repeat(sb, '\t', tabs);
+                try {
+                    if (row == -2) {
+                        appendRow(sb, headings);
+                    } else if (row == -1) {
+                        appendRow(sb, headingDividers);
+                    } else {
+                        appendRow(sb, row);
+                    }
+                } catch (IOException ex) {
+                    // not thrown by StringBuilder
+                    throw new UncheckedIOException(ex);
                 }
+                row++;
                 return sb;
             }
         };
     }
-    
+
     public void print(PrintStream writer) {
-        for(CharSequence seq: this) {
-            writer.println(seq);
+        try {
+            writeTo(writer);
+        } catch (IOException ex) {
+            // not thrown by PrintStream
+            throw new UncheckedIOException(ex);
         }
+        // as println would with auto flush
+        writer.flush();
     }
-    
+
     public void print(PrintWriter writer) {
-        for(CharSequence seq: this) {
-            writer.println(seq);
+        try {
+            writeTo(writer);
+        } catch (IOException ex) {
+            // not thrown by PrintWriter
+            throw new UncheckedIOException(ex);
         }
+        // as println would with auto flush
+        writer.flush();
     }
 }
@@ -0,0 +1,211 @@
+package au.id.simo.useful.text;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a table to a Writer as rows are added, with the columns lined up
+ * the same way as {@link TextTable}.
+ * <p>
+ * Unlike TextTable, not all rows are held in memory. The column widths are
+ * fixed from the headings and a sample of the first rows, which are held
+ * until the sample is complete. Every later row is written as soon as it is
+ * added, so any number of rows can be written in constant memory. Fields of
+ * later rows that are longer than their column are truncated or extend past
+ * the column, depending on the {@link Overflow} policy.
+ * <p>
+ * Usage Example:
+ * <pre>
+ * try (TextTableWriter table = new TextTableWriter(writer)) {
+ *     table.setHeadings("Name", "Size");
+ *     for (File file : files) {
+ *         table.addRow(file.getName(), file.length());
+ *     }
+ * }
+ * </pre>
+ */
+public class TextTableWriter implements Flushable, Closeable {
+
+    /**
+     * The default number of rows used to fix the column widths.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+    private static final int TAB_SIZE = 8;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * What to do with a field longer than its column, after the column widths
+     * are fixed.
+     */
+    public enum Overflow {
+        /**
+         * Cut the field to the width of the column, so later columns stay
+         * lined up.
+         */
+        TRUNCATE,
+        /**
+         * Write the whole field, pushing later columns of the row along.
+         */
+        EXTEND
+    }
+
+    private final Writer out;
+    private final int sampleSize;
+    private final Overflow overflow;
+    private String[] headings;
+    /**
+     * Rows held until the column widths are fixed, null once they are.
+     */
+    private List<String[]> sample;
+    /**
+     * The longest field length of each column.
+     */
+    private int[] maxFieldLengths;
+
+    public TextTableWriter(Writer out) {
+        this(out, DEFAULT_SAMPLE_SIZE, Overflow.EXTEND);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out where to write the table.
+     * @param sampleSize the number of rows used to fix the column widths.
+     * @param overflow what to do with later fields longer than their column.
+     * @throws IllegalArgumentException if sampleSize is negative.
+     */
+    public TextTableWriter(Writer out, int sampleSize, Overflow overflow) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("sampleSize cannot be negative");
+        }
+        this.out = out;
+        this.sampleSize = sampleSize;
+        this.overflow = overflow;
+        this.sample = new ArrayList<>(Math.min(sampleSize, DEFAULT_SAMPLE_SIZE));
+        this.maxFieldLengths = new int[0];
+    }
+
+    /**
+     * @param colnames the column headings.
+     * @return this TextTableWriter for further method chaining.
+     * @throws IllegalStateException if the column widths are already fixed.
+     */
+    public TextTableWriter setHeadings(Object... colnames) {
+        if (sample == null) {
+            throw new IllegalStateException("Headings must be set before any rows are written");
+        }
+        headings = toStrings(colnames);
+        updateMaxFieldLengths(headings);
+        return this;
+    }
+
+    /**
+     * Adds a row, which is written once the column widths are fixed.
+     *
+     * @param fields the fields of the row.
+     * @return this TextTableWriter for further method chaining.
+     * @throws IOException if there is any error writing.
+     */
+    public TextTableWriter addRow(Object... fields) throws IOException {
+        String[] row = toStrings(fields);
+        if (sample == null) {
+            writeRow(row, overflow, 1);
+            return this;
+        }
+        sample.add(row);
+        updateMaxFieldLengths(row);
+        if (sample.size() >= sampleSize) {
+            writeSample();
+        }
+        return this;
+    }
+
+    private static String[] toStrings(Object[] fields) {
+        String[] strings = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            strings[i] = String.valueOf(fields[i]);
+        }
+        return strings;
+    }
+
+    private void updateMaxFieldLengths(String[] row) {
+        if (row.length > maxFieldLengths.length) {
+            int[] lengths = new int[row.length];
+            System.arraycopy(maxFieldLengths, 0, lengths, 0, maxFieldLengths.length);
+            maxFieldLengths = lengths;
+        }
+        for (int i = 0; i < row.length; i++) {
+            maxFieldLengths[i] = Math.max(maxFieldLengths[i], row[i].length());
+        }
+    }
+
+    /**
+     * Fixes the column widths, then writes the headings and the sample rows.
+     */
+    private void writeSample() throws IOException {
+        List<String[]> rows = sample;
+        sample = null;
+        if (headings != null) {
+            writeRow(headings, Overflow.EXTEND, 1);
+            String[] headingDividers = new String[maxFieldLengths.length];
+            for (int i = 0; i < maxFieldLengths.length; i++) {
+                int colWidth = (maxFieldLengths[i] / TAB_SIZE) + TAB_SIZE;
+                headingDividers[i] = Text.repeat('-', colWidth);
+            }
+            // dividers run into the next column, as in TextTable
+            writeRow(headingDividers, Overflow.EXTEND, 0);
+        }
+        for (String[] row : rows) {
+            writeRow(row, Overflow.EXTEND, 1);
+        }
+    }
+
+    private void writeRow(String[] row, Overflow policy, int minTabs) throws IOException {
+        for (int i = 0; i < row.length; i++) {
+            String field = row[i];
+            int fieldLength = field.length();
+            // a column not in the sample has no width to keep to
+            int maxFieldLength = i < maxFieldLengths.length ? maxFieldLengths[i] : fieldLength;
+            if (fieldLength > maxFieldLength && policy == Overflow.TRUNCATE) {
+                fieldLength = maxFieldLength;
+            }
+            int maxTabs = maxFieldLength / TAB_SIZE;
+            int fieldTabs = fieldLength / TAB_SIZE;
+            // + 1 because we always want at least one tab
+            int tabs = Math.max(minTabs, (maxTabs - fieldTabs) + 1);
+            out.write(field, 0, fieldLength);
+            TextTable.appendTabs(out, tabs);
+        }
+        out.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Fixes the column widths if the sample is not yet complete, writing any
+     * rows held, then flushes the underlying Writer.
+     *
+     * @throws IOException if there is any error writing.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (sample != null) {
+            writeSample();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes any rows held, then closes the underlying Writer.
+     *
+     * @throws IOException if there is any error writing.
+     */
+    @Override
+    public void close() throws IOException {
+        try (Writer w = out) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package au.id.simo.useful.text;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A String with variables, already parsed by a {@link VarExpander} or
+ * {@link au.id.simo.useful.io.VarExpanderReader} into literal text and
+ * variable names.
+ * <p>
+ * Expanding a VarTemplate does not parse the String again, and allocates
+ * nothing besides the output. When expanded into a provided StringBuilder or
+ * Appendable, nothing is allocated at all besides any growth of the output.
+ * <p>
+ * Instances are immutable, so can be shared between threads and expanded with
+ * any number of different variable maps.
+ *
+ * @see EnvVarExpander#compile(String)
+ * @see PercentVarExpander#compile(String)
+ * @see au.id.simo.useful.io.VarExpanderReader#compile(Reader, String, String)
+ */
+public final class VarTemplate {
+
+    /**
+     * Literal text before each variable, then the text after the last.
+     */
+    private final String[] literals;
+    private final String[] varNames;
+    private final int literalLength;
+
+    /**
+     * Constructor.
+     *
+     * @param literals the literal text before each variable, then the text
+     * after the last variable.
+     * @param varNames the name of each variable in order.
+     * @throws IllegalArgumentException if there is not exactly one more
+     * literal than variables.
+     */
+    public VarTemplate(List<String> literals, List<String> varNames) {
+        if (literals.size() != varNames.size() + 1) {
+            throw new IllegalArgumentException("There must be one more literal than variables");
+        }
+        this.literals = literals.toArray(new String[0]);
+        this.varNames = varNames.toArray(new String[0]);
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @return the name of each variable in order, including any repeats.
+     */
+    public List<String> getVarNames() {
+        return Collections.unmodifiableList(Arrays.asList(varNames));
+    }
+
+    /**
+     * @param varMap variable names to values. Variables with no value are
+     * removed.
+     * @return the expanded String.
+     */
+    public String expand(Map<String, String> varMap) {
+        StringBuilder sb = new StringBuilder(literalLength + 16 * varNames.length);
+        expandTo(varMap, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the expanded String.
+     *
+     * @param varMap variable names to values. Variables with no value are
+     * removed.
+     * @param sb where to append the expanded String.
+     */
+    public void expandTo(Map<String, String> varMap, StringBuilder sb) {
+        sb.append(literals[0]);
+        for (int i = 0; i < varNames.length; i++) {
+            String value = varMap.get(varNames[i]);
+            if (value != null) {
+                sb.append(value);
+            }
+            sb.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * Appends the expanded String.
+     *
+     * @param varMap variable names to values. Variables with no value are
+     * removed.
+     * @param out where to append the expanded String.
+     * @throws IOException if there is any error appending.
+     */
+    public void expandTo(Map<String, String> varMap, Appendable out) throws IOException {
+        out.append(literals[0]);
+        for (int i = 0; i < varNames.length; i++) {
+            String value = varMap.get(varNames[i]);
+            if (value != null) {
+                out.append(value);
+            }
+            out.append(literals[i + 1]);
+        }
+    }
+
+    /**
+     * @param varMap variable names to values. Variables with no value are
+     * removed.
+     * @return a Reader of the expanded String.
+     */
+    public Reader reader(Map<String, String> varMap) {
+        return new StringReader(expand(varMap));
+    }
+}
@@ -1,46 +1,179 @@
 package au.id.simo.useful.xml;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
 /**
  * String Utilities for modifying String and escaping XML characters.
+ * <p>
+ * Escaping is done in a single pass, copying runs of characters that need no
+ * escaping in bulk. A String with nothing to escape is returned as is.
  */
 public class XmlStringUtil {
 
+    /**
+     * The escape of each character in content, indexed by character, or null
+     * if not escaped. No character above '&gt;' is escaped.
+     */
+    private static final String[] CONTENT_ESCAPES = new String['>' + 1];
+    private static final String[] ATTRIBUTE_ESCAPES = new String['>' + 1];
+
+    static {
+        CONTENT_ESCAPES['&'] = "&amp;";
+        CONTENT_ESCAPES['<'] = "&lt;";
+        CONTENT_ESCAPES['>'] = "&gt;";
+        System.arraycopy(CONTENT_ESCAPES, 0, ATTRIBUTE_ESCAPES, 0, CONTENT_ESCAPES.length);
+        ATTRIBUTE_ESCAPES['\''] = "&apos;";
+        ATTRIBUTE_ESCAPES['"'] = "&quot;";
+        ATTRIBUTE_ESCAPES['\t'] = "&#x9;";
+        ATTRIBUTE_ESCAPES['\n'] = "&#xA;";
+        ATTRIBUTE_ESCAPES['\r'] = "&#xD;";
+    }
+
     private XmlStringUtil() {
         // no-op
     }
-    
+
     public static String escapeAttribute(String str) {
-        StringBuilder sb = new StringBuilder(str);
-        replaceAttribute(sb);
-        return sb.toString();
+        return escape(str, ATTRIBUTE_ESCAPES);
     }
 
     public static String escapeContent(String str) {
-        StringBuilder sb = new StringBuilder(str);
-        replaceContent(sb);
-        return sb.toString();
+        return escape(str, CONTENT_ESCAPES);
+    }
+
+    /**
+     * Appends the attribute escaped version of the provided characters.
+     *
+     * @param str the characters to escape.
+     * @param out where to append the escaped characters.
+     * @throws IOException if there is any error appending.
+     */
+    public static void escapeAttribute(CharSequence str, Appendable out) throws IOException {
+        appendEscaped(out, str, 0, ATTRIBUTE_ESCAPES);
+    }
+
+    /**
+     * Appends the content escaped version of the provided characters.
+     *
+     * @param str the characters to escape.
+     * @param out where to append the escaped characters.
+     * @throws IOException if there is any error appending.
+     */
+    public static void escapeContent(CharSequence str, Appendable out) throws IOException {
+        appendEscaped(out, str, 0, CONTENT_ESCAPES);
     }
 
     public static void replaceContent(StringBuilder sb) {
-        replace(sb, "&", "&amp;");
-        replace(sb, "<", "&lt;");
-        replace(sb, ">", "&gt;");
+        replaceEscaped(sb, CONTENT_ESCAPES);
     }
 
     public static void replaceAttribute(StringBuilder sb) {
-        replaceContent(sb);
-        replace(sb, "'", "&apos;");
-        replace(sb, "\"", "&quot;");
-        replace(sb, "\t", "&#x9;");
-        replace(sb, "\n", "&#xA;");
-        replace(sb, "\r", "&#xD;");
+        replaceEscaped(sb, ATTRIBUTE_ESCAPES);
     }
 
+    /**
+     * Replaces every occurrence of find. Replacements are not scanned again.
+     *
+     * @param sb the characters to modify.
+     * @param find the characters to replace.
+     * @param replaceWith the characters to put in their place.
+     * @throws IllegalArgumentException if find is empty.
+     */
     public static void replace(StringBuilder sb, String find, String replaceWith) {
-        int index = 0;
-        while ((index = sb.indexOf(find, index)) != -1) {
-            sb.replace(index, index + find.length(), replaceWith);
-            index++;
+        if (find.isEmpty()) {
+            throw new IllegalArgumentException("find cannot be empty");
+        }
+        int index = sb.indexOf(find);
+        if (index == -1) {
+            return;
+        }
+        // build the result in one pass, rather than shifting the tail of sb
+        // on each replacement.
+        StringBuilder result = new StringBuilder(sb.length());
+        int start = 0;
+        while (index != -1) {
+            result.append(sb, start, index).append(replaceWith);
+            start = index + find.length();
+            index = sb.indexOf(find, start);
+        }
+        result.append(sb, start, sb.length());
+        sb.setLength(0);
+        sb.append(result);
+    }
+
+    private static String escape(String str, String[] escapes) {
+        int first = indexOfEscape(str, 0, escapes);
+        if (first == -1) {
+            return str;
+        }
+        StringBuilder sb = new StringBuilder(str.length() + 16);
+        sb.append(str, 0, first);
+        try {
+            appendEscaped(sb, str, first, escapes);
+        } catch (IOException ex) {
+            // not thrown by StringBuilder
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    private static void replaceEscaped(StringBuilder sb, String[] escapes) {
+        int first = indexOfEscape(sb, 0, escapes);
+        if (first == -1) {
+            return;
+        }
+        String str = sb.toString();
+        sb.setLength(first);
+        try {
+            appendEscaped(sb, str, first, escapes);
+        } catch (IOException ex) {
+            // not thrown by StringBuilder
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return the index of the first character from start that is escaped,
+     * or -1 if none are.
+     */
+    private static int indexOfEscape(CharSequence str, int start, String[] escapes) {
+        for (int i = start; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the characters from start, escaped.
+     */
+    private static void appendEscaped(Appendable out, CharSequence str, int start, String[] escapes) throws IOException {
+        int length = str.length();
+        int runStart = start;
+        for (int i = start; i < length; i++) {
+            char c = str.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                appendRun(out, str, runStart, i);
+                out.append(escapes[c]);
+                runStart = i + 1;
+            }
+        }
+        appendRun(out, str, runStart, length);
+    }
+
+    private static void appendRun(Appendable out, CharSequence str, int start, int end) throws IOException {
+        if (start == end) {
+            return;
+        }
+        if (out instanceof Writer && str instanceof String) {
+            // avoids the substring of Writer.append
+            ((Writer) out).write((String) str, start, end - start);
+        } else {
+            out.append(str, start, end);
         }
     }
 }
@@ -0,0 +1,176 @@
+package au.id.simo.useful.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.simo.useful.Defer;
+import au.id.simo.useful.concurrent.BoundedExecutorService.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class BoundedExecutorServiceTest {
+
+    @Test
+    public void testMaxActive() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService service = defer.shutdown(new BoundedExecutorService(delegate, 3, 100));
+            for (int i = 0; i < 50; i++) {
+                service.execute(() -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    active.decrementAndGet();
+                });
+            }
+            service.shutdown();
+            assertTrue(service.awaitTermination(10, TimeUnit.SECONDS));
+            assertEquals(50, service.getStartedCount());
+            assertEquals(50, service.getCompletedCount());
+            assertEquals(0, service.getRejectedCount());
+        }
+        assertTrue(maxActive.get() <= 3, "No more than 3 tasks run at once");
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService service = new BoundedExecutorService(delegate, 1, 1);
+            Future<?> running = service.submit(() -> await(release));
+            Future<?> queued = service.submit(() -> await(release));
+            assertEquals(1, service.getActiveCount());
+            assertEquals(1, service.getQueueLength());
+
+            assertThrows(RejectedExecutionException.class, () -> service.submit(() -> {}));
+            assertEquals(1, service.getRejectedCount());
+
+            release.countDown();
+            running.get(5, TimeUnit.SECONDS);
+            queued.get(5, TimeUnit.SECONDS);
+            assertEquals(0, service.getQueueLength());
+            assertTrue(service.getMaxWaitTime(TimeUnit.NANOSECONDS) > 0);
+            service.shutdown();
+            assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBlockUntilTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService service = new BoundedExecutorService(
+                    delegate, 1, 0, OverflowPolicy.BLOCK, 20, TimeUnit.MILLISECONDS
+            );
+            service.submit(() -> await(release));
+            assertThrows(RejectedExecutionException.class, () -> service.submit(() -> {}));
+            assertEquals(1, service.getRejectedCount());
+            release.countDown();
+            service.shutdown();
+            assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBlockUntilSpace() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService service = new BoundedExecutorService(
+                    delegate, 1, 0, OverflowPolicy.BLOCK, 0, TimeUnit.MILLISECONDS
+            );
+            service.submit(() -> await(release));
+            // releases the first task from another thread while blocked
+            Thread releaser = new Thread(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                release.countDown();
+            });
+            releaser.start();
+            Future<String> second = service.submit(() -> "done");
+            assertEquals("done", second.get(5, TimeUnit.SECONDS));
+            assertEquals(0, service.getRejectedCount());
+            releaser.join();
+            service.shutdown();
+            assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService service = new BoundedExecutorService(delegate, 1, 5);
+            service.execute(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+            });
+            service.execute(() -> {});
+            started.await();
+            List<Runnable> neverStarted = service.shutdownNow();
+            assertEquals(1, neverStarted.size());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+            assertTrue(service.isTerminated());
+            assertThrows(RejectedExecutionException.class, () -> service.execute(() -> {}));
+        }
+    }
+
+    @Test
+    public void testRejectedByDelegate() throws Exception {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        delegate.shutdown();
+        BoundedExecutorService service = new BoundedExecutorService(delegate, 1, 1);
+        assertThrows(RejectedExecutionException.class, () -> service.execute(() -> {}));
+        assertEquals(1, service.getRejectedCount());
+        // the slot is freed for the next task
+        assertEquals(0, service.getActiveCount());
+        service.shutdown();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        assertThrows(IllegalArgumentException.class, () -> new BoundedExecutorService(delegate, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new BoundedExecutorService(delegate, 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> {
+            new BoundedExecutorService(delegate, 1, 1, OverflowPolicy.BLOCK, -1, TimeUnit.SECONDS);
+        });
+        delegate.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package au.id.simo.useful.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 import au.id.simo.useful.datagen.DataGenFactory;
@@ -223,6 +224,17 @@ public interface ByteBundleTest extends InputStreamTest, ResourceTest {
         });
     }
     
+    @Test
+    default void testOutputStream() throws IOException {
+        ByteBundle bb = newByteBundle(2, 60);
+        bb.append(new byte[]{0, 1});
+        try (OutputStream out = bb.outputStream()) {
+            out.write(2);
+            out.write(new byte[]{9, 3, 4, 5, 9}, 1, 3);
+        }
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5}, bb.getBytes());
+    }
+
     default void zeroArray(byte[] array) {
         for (int i = 0; i < array.length; i++) {
             array[i] = 0;
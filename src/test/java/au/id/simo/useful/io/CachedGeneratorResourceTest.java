@@ -0,0 +1,95 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.simo.useful.datagen.DataGenFactory;
+import au.id.simo.useful.test.ManualClock;
+import au.id.simo.useful.test.ManualExecutorService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class CachedGeneratorResourceTest implements ResourceTest {
+
+    @Override
+    public Resource createResource(byte[] testData, Charset charset) throws IOException {
+        return new CachedGeneratorResource(out -> out.write(testData));
+    }
+
+    @Test
+    public void testGeneratedOnce() throws Exception {
+        AtomicInteger runCount = new AtomicInteger();
+        Resource res = new CachedGeneratorResource(out -> out.write(runCount.incrementAndGet()));
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        ManualClock clock = new ManualClock();
+        AtomicInteger runCount = new AtomicInteger();
+        Resource res = new CachedGeneratorResource(clock, out -> out.write(runCount.incrementAndGet()))
+                .setTimeToLive(Duration.ofMinutes(1));
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        clock.increment(Duration.ofSeconds(59));
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        clock.increment(Duration.ofSeconds(1));
+        assertArrayEquals(new byte[]{2}, IOUtils.getBytes(res));
+        assertEquals(2, runCount.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        ManualClock clock = new ManualClock();
+        ManualExecutorService executor = new ManualExecutorService();
+        AtomicInteger runCount = new AtomicInteger();
+        Resource res = new CachedGeneratorResource(clock, out -> out.write(runCount.incrementAndGet()))
+                .setTimeToLive(Duration.ofMinutes(1))
+                .setRefreshExecutor(executor);
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        clock.increment(Duration.ofMinutes(1));
+
+        // stale data while a single refresh is queued
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        assertArrayEquals(new byte[]{1}, IOUtils.getBytes(res));
+        assertEquals(1, executor.tasks.size());
+
+        executor.runTask();
+        assertArrayEquals(new byte[]{2}, IOUtils.getBytes(res));
+        assertEquals(2, runCount.get());
+    }
+
+    @Test
+    public void testGeneratorException() throws Exception {
+        Resource res = new CachedGeneratorResource(out -> {
+            throw new IOException("Manually thrown exception");
+        });
+        IOException ioe = assertThrows(IOException.class, () -> res.inputStream());
+        assertEquals("Manually thrown exception", ioe.getMessage());
+    }
+
+    @Test
+    public void testMemorySensitive() throws Exception {
+        AtomicInteger runCount = new AtomicInteger();
+        CachedGeneratorResource res = new CachedGeneratorResource(out -> {
+            runCount.incrementAndGet();
+            IOUtils.copy(DataGenFactory.incrementingBytes(100_000), out);
+        }).setMemorySensitive(true);
+        byte[] first = IOUtils.getBytes(res);
+        assertEquals(100_000, first.length);
+        assertArrayEquals(first, IOUtils.getBytes(res));
+
+        // released data is generated again
+        res.clearCache();
+        assertArrayEquals(first, IOUtils.getBytes(res));
+        // soft references may also have been released by the garbage collector
+        assertTrue(runCount.get() >= 2, "generated again after release");
+    }
+}
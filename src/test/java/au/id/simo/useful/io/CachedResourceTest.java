@@ -1,10 +1,28 @@
 package au.id.simo.useful.io;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.simo.useful.Defer;
+import au.id.simo.useful.test.ManualClock;
+import au.id.simo.useful.test.ManualExecutorService;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -93,4 +111,240 @@ public class CachedResourceTest implements ResourceTest {
         
         assertEquals(0, cRes.cacheHits());
     }
+
+    /**
+     * Counts the number of times the underlying Resource is read.
+     */
+    private static class CountingResource implements Resource {
+
+        private volatile byte[] data;
+        private final AtomicInteger openCount = new AtomicInteger();
+
+        CountingResource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream inputStream() throws IOException {
+            openCount.incrementAndGet();
+            return new ByteArrayInputStream(data);
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesCoalesce() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream);
+
+        try (InputStream first = cRes.inputStream();
+                InputStream second = cRes.inputStream();
+                InputStream third = cRes.inputStream()) {
+            // followers receive bytes as soon as the first stream reads them
+            assertEquals(1, first.read());
+            assertEquals(1, second.read());
+            byte[] buf = new byte[5];
+            assertEquals(4, first.read(buf, 0, 4));
+            // only the bytes recorded so far are available
+            assertEquals(4, second.read(buf));
+            assertArrayEquals(new byte[]{2, 3, 4, 5, 0}, buf);
+            assertEquals(TEST_DATA.length - 5, IOUtils.drain(first));
+            assertEquals(TEST_DATA.length - 5, IOUtils.drain(second));
+            assertArrayEquals(TEST_DATA, IOUtils.getBytes(third));
+        }
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(1, upstream.openCount.get());
+        assertEquals(1, cRes.cacheMisses());
+        assertEquals(3, cRes.cacheHits());
+    }
+
+    @Test
+    public void testFollowerWaitsForRecording() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream);
+
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(4));
+            InputStream first = defer.close(cRes.inputStream());
+            List<Future<byte[]>> followers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                InputStream follower = cRes.inputStream();
+                followers.add(service.submit(() -> IOUtils.getBytes(follower)));
+            }
+            assertArrayEquals(TEST_DATA, IOUtils.getBytes(first));
+            for (Future<byte[]> follower : followers) {
+                assertArrayEquals(TEST_DATA, follower.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, upstream.openCount.get());
+    }
+
+    @Test
+    public void testFollowerContinuesWhenRecordingAbandoned() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream);
+
+        InputStream first = cRes.inputStream();
+        InputStream second = cRes.inputStream();
+        assertEquals(1, first.read());
+        assertEquals(2, first.read());
+        first.close();
+
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(second));
+        assertEquals(2, upstream.openCount.get());
+
+        // the abandoned recording was not cached
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(3, upstream.openCount.get());
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(3, upstream.openCount.get());
+    }
+
+    @Test
+    public void testFollowerOnRecordingThread() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream);
+
+        try (InputStream first = cRes.inputStream();
+                InputStream second = cRes.inputStream()) {
+            // only this thread can read the first, so the second must not
+            // wait for it, not even until the follow timeout.
+            assertTimeout(Duration.ofSeconds(1), () -> {
+                assertArrayEquals(TEST_DATA, IOUtils.getBytes(second));
+            });
+            assertArrayEquals(TEST_DATA, IOUtils.getBytes(first));
+        }
+        assertEquals(2, upstream.openCount.get());
+    }
+
+    @Test
+    public void testFollowerTimeout() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream)
+                .setFollowTimeout(Duration.ofMillis(50));
+
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            // never read or closed
+            InputStream abandoned = cRes.inputStream();
+            assertEquals(1, abandoned.read());
+            Future<byte[]> follower = service.submit(() -> IOUtils.getBytes(cRes));
+            assertArrayEquals(TEST_DATA, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, upstream.openCount.get());
+        assertThrows(IllegalArgumentException.class, () -> cRes.setFollowTimeout(Duration.ofMillis(-1)));
+    }
+
+    @Test
+    public void testSkipNegative() throws Exception {
+        CachedResource cRes = new CachedResource(new ByteArrayResource(TEST_DATA));
+        try (InputStream in = cRes.inputStream()) {
+            assertEquals(0, in.skip(-1));
+            assertEquals(1, in.read());
+        }
+    }
+
+    @Test
+    public void testFollowerResourceShrunk() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream);
+
+        InputStream first = cRes.inputStream();
+        InputStream second = cRes.inputStream();
+        byte[] buf = new byte[10];
+        assertEquals(10, first.read(buf));
+        assertEquals(10, second.read(buf));
+        first.close();
+
+        // shorter than the bytes the follower has already read
+        upstream.data = new byte[5];
+        assertThrows(EOFException.class, () -> second.read());
+        second.close();
+    }
+
+    @Test
+    public void testFollowerContinuesWhenCacheSizeExceeded() throws Exception {
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(upstream, 10);
+
+        try (InputStream first = cRes.inputStream();
+                InputStream second = cRes.inputStream()) {
+            assertArrayEquals(TEST_DATA, IOUtils.getBytes(first));
+            assertArrayEquals(TEST_DATA, IOUtils.getBytes(second));
+        }
+        assertEquals(2, upstream.openCount.get());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        ManualClock clock = new ManualClock();
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(clock, upstream, 100)
+                .setTimeToLive(Duration.ofMinutes(1));
+
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        clock.increment(Duration.ofSeconds(59));
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(1, upstream.openCount.get());
+
+        upstream.data = new byte[]{1, 2, 3};
+        clock.increment(Duration.ofSeconds(1));
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.getBytes(cRes));
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.getBytes(cRes));
+        assertEquals(2, upstream.openCount.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        ManualClock clock = new ManualClock();
+        ManualExecutorService executor = new ManualExecutorService();
+        CountingResource upstream = new CountingResource(TEST_DATA);
+        CachedResource cRes = new CachedResource(clock, upstream, 100)
+                .setTimeToLive(Duration.ofMinutes(1))
+                .setRefreshExecutor(executor);
+
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        upstream.data = new byte[]{1, 2, 3};
+        clock.increment(Duration.ofMinutes(1));
+
+        // stale data is returned while a single refresh is queued
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(1, executor.tasks.size());
+        assertEquals(1, upstream.openCount.get());
+
+        executor.runTask();
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.getBytes(cRes));
+        assertEquals(2, upstream.openCount.get());
+        assertEquals(1, cRes.cacheMisses());
+    }
+
+    @Test
+    public void testFileRevalidation(@TempDir Path tempDir) throws Exception {
+        ManualClock clock = new ManualClock();
+        Path file = tempDir.resolve("cached.txt");
+        Files.write(file, TEST_DATA);
+        AtomicInteger openCount = new AtomicInteger();
+        FileResource fileRes = new FileResource(file) {
+            @Override
+            public InputStream inputStream() throws IOException {
+                openCount.incrementAndGet();
+                return super.inputStream();
+            }
+        };
+        CachedResource cRes = new CachedResource(clock, fileRes, 100)
+                .setTimeToLive(Duration.ofMinutes(1));
+
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+
+        // unchanged file is not read again
+        clock.increment(Duration.ofMinutes(2));
+        assertArrayEquals(TEST_DATA, IOUtils.getBytes(cRes));
+        assertEquals(1, openCount.get());
+
+        Files.write(file, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(fileRes.lastModified() + 5000));
+        clock.increment(Duration.ofMinutes(2));
+        assertArrayEquals(new byte[]{1, 2, 3}, IOUtils.getBytes(cRes));
+        assertEquals(2, openCount.get());
+    }
 }
@@ -4,17 +4,22 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import au.id.simo.useful.Defer;
+import au.id.simo.useful.concurrent.BoundedExecutorService;
 import au.id.simo.useful.io.ConcurrentGeneratorResource.ConsumerInputStream;
 import au.id.simo.useful.test.ManualExecutorService;
 import org.junit.jupiter.api.Test;
@@ -284,6 +289,154 @@ public class ConcurrentGeneratorResourceTest implements ResourceTest {
         });
     }
     
+    @Test
+    public void testReadTimeoutCancelsGenerator() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Generator gen = (OutputStream out) -> {
+            out.write(0);
+            out.flush();
+            try {
+                // stuck generator
+                Thread.sleep(60_000);
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+            }
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newCachedThreadPool());
+            ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(service, gen)
+                    .setReadTimeout(20, TimeUnit.MILLISECONDS);
+            InputStream in = genRes.inputStream();
+            assertEquals(0, in.read());
+            assertThrows(InterruptedIOException.class, () -> in.read());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Generator thread interrupted");
+            // no exception on close after a timeout
+            in.close();
+        }
+    }
+
+    @Test
+    public void testGenerationTimeout() throws Exception {
+        Generator gen = (OutputStream out) -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                out.write(0);
+            }
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newCachedThreadPool());
+            ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(service, gen, 10)
+                    .setGenerationTimeout(50, TimeUnit.MILLISECONDS);
+            // either the consumer read, or the generator write, exceeds the
+            // deadline first. The generator exception is thrown on close.
+            InterruptedIOException ex = assertThrows(InterruptedIOException.class, () -> {
+                try (InputStream in = genRes.inputStream()) {
+                    IOUtils.drain(in);
+                }
+            });
+            assertEquals("Deadline exceeded", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testExceptionAfterEndOfStream() throws Exception {
+        Generator gen = (OutputStream out) -> {
+            out.write(0);
+            out.close();
+            // ensure the consumer sees the end of stream first
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Thrown after end of stream");
+        };
+        ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(gen);
+        InputStream in = genRes.inputStream();
+        assertEquals(0, in.read());
+        assertEquals(-1, in.read());
+        IOException ex = assertThrows(IOException.class, () -> in.close());
+        assertEquals("Thrown after end of stream", ex.getMessage());
+    }
+
+    @Test
+    public void testStalledAfterEndOfStream() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Generator gen = (OutputStream out) -> {
+            out.write(0);
+            out.close();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+            }
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newCachedThreadPool());
+            ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(service, gen)
+                    .setCloseTimeout(50, TimeUnit.MILLISECONDS);
+            InputStream in = genRes.inputStream();
+            assertEquals(0, in.read());
+            assertEquals(-1, in.read());
+            // waits no longer than the close timeout, then cancels
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> in.close());
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testConsumerInterruptedIsNotTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Generator gen = (OutputStream out) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Generator failed");
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newCachedThreadPool());
+            ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(service, gen);
+            InputStream in = genRes.inputStream();
+            Thread.currentThread().interrupt();
+            assertThrows(InterruptedIOException.class, () -> in.read());
+            assertTrue(Thread.interrupted());
+            release.countDown();
+            IOException ex = assertThrows(IOException.class, () -> in.close());
+            assertEquals("Generator failed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testRejectedGenerator() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Generator gen = (OutputStream out) -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService delegate = defer.shutdown(Executors.newCachedThreadPool());
+            BoundedExecutorService bounded = new BoundedExecutorService(delegate, 1, 0);
+            ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(bounded, gen);
+            InputStream in = genRes.inputStream();
+            IOException ex = assertThrows(IOException.class, () -> genRes.inputStream());
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+            release.countDown();
+            in.close();
+        }
+    }
+
+    @Test
+    public void testNegativeTimeouts() {
+        ConcurrentGeneratorResource genRes = new ConcurrentGeneratorResource(out -> {});
+        assertThrows(IllegalArgumentException.class, () -> genRes.setReadTimeout(-1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> genRes.setGenerationTimeout(-1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> genRes.setCloseTimeout(-1, TimeUnit.SECONDS));
+    }
+
     @Test
     public void testChangeDefaultExecutorService() {
         ManualExecutorService manualService = new ManualExecutorService();
@@ -0,0 +1,166 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import au.id.simo.useful.Defer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class ContentStoreTest implements ResourceTest {
+
+    private static final String HELLO_SHA256
+            = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @TempDir
+    Path tempDir;
+
+    @Override
+    public Resource createResource(byte[] testData, Charset charset) throws IOException {
+        return new ContentStore().add(new ByteArrayResource(testData));
+    }
+
+    private static long fileCount(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testDuplicatesStoredOnce() throws Exception {
+        ContentStore store = new ContentStore();
+        ContentStore.ContentRef ref1 = store.add(new ByteArrayResource("hello".getBytes()));
+        ContentStore.ContentRef ref2 = store.add(new ByteArrayInputStream("hello".getBytes()));
+        ContentStore.ContentRef ref3 = store.add(new ByteArrayResource("world".getBytes()));
+
+        assertEquals(HELLO_SHA256, ref1.getDigest());
+        assertEquals(ref1.getDigest(), ref2.getDigest());
+        assertNotEquals(ref1.getDigest(), ref3.getDigest());
+        assertEquals(5, ref1.size());
+        assertEquals(2, store.getPayloadCount());
+        assertEquals(10, store.getStoredBytes());
+        assertEquals(2, store.getReferenceCount(HELLO_SHA256));
+        assertArrayEquals("hello".getBytes(), IOUtils.getBytes(ref2));
+    }
+
+    @Test
+    public void testReleasedOnLastClose() throws Exception {
+        ContentStore store = new ContentStore();
+        ContentStore.ContentRef ref1 = store.add(new ByteArrayResource("hello".getBytes()));
+        ContentStore.ContentRef ref2 = store.add(new ByteArrayResource("hello".getBytes()));
+
+        ref1.close();
+        // closing again has no effect
+        ref1.close();
+        assertEquals(1, store.getReferenceCount(HELLO_SHA256));
+        assertThrows(IOException.class, () -> ref1.inputStream());
+        assertArrayEquals("hello".getBytes(), IOUtils.getBytes(ref2));
+
+        ref2.close();
+        assertEquals(0, store.getReferenceCount(HELLO_SHA256));
+        assertEquals(0, store.getPayloadCount());
+        assertEquals(0, store.getStoredBytes());
+        assertNull(store.get(HELLO_SHA256));
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        ContentStore store = new ContentStore();
+        try (ContentStore.ContentRef ref = store.add(new ByteArrayResource("hello".getBytes()))) {
+            ContentStore.ContentRef other = store.get(ref.getDigest());
+            assertNotNull(other);
+            assertEquals(2, store.getReferenceCount(HELLO_SHA256));
+            assertArrayEquals("hello".getBytes(), IOUtils.getBytes(other));
+            other.close();
+        }
+        assertNull(store.get("unknown"));
+    }
+
+    @Test
+    public void testDirectoryStore() throws Exception {
+        ContentStore store = new ContentStore(tempDir);
+        ContentStore.ContentRef ref1 = store.add(new ByteArrayResource("hello".getBytes()));
+        ContentStore.ContentRef ref2 = store.add(new ByteArrayResource("hello".getBytes()));
+        ContentStore.ContentRef ref3 = store.add(new ByteArrayResource("world".getBytes()));
+
+        // no temporary files left behind
+        assertEquals(2, fileCount(tempDir));
+        assertTrue(Files.exists(tempDir.resolve(HELLO_SHA256)));
+        assertArrayEquals("hello".getBytes(), IOUtils.getBytes(ref1));
+
+        ref1.close();
+        assertTrue(Files.exists(tempDir.resolve(HELLO_SHA256)));
+        ref2.close();
+        assertFalse(Files.exists(tempDir.resolve(HELLO_SHA256)));
+        assertEquals(1, fileCount(tempDir));
+
+        store.close();
+        assertEquals(0, fileCount(tempDir));
+        assertThrows(IOException.class, () -> ref3.inputStream());
+    }
+
+    @Test
+    public void testDirectoryStore_ConcurrentReleaseAndAdd() throws Exception {
+        byte[] hello = "hello".getBytes();
+        try (Defer defer = new Defer();
+                ContentStore store = new ContentStore(tempDir)) {
+            ExecutorService executor = defer.shutdown(Executors.newFixedThreadPool(2));
+            for (int i = 0; i < 200; i++) {
+                ContentStore.ContentRef released = store.add(new ByteArrayResource(hello));
+                CountDownLatch start = new CountDownLatch(1);
+                Future<?> release = executor.submit(() -> {
+                    start.await();
+                    released.close();
+                    return null;
+                });
+                Future<ContentStore.ContentRef> add = executor.submit(() -> {
+                    start.await();
+                    return store.add(new ByteArrayResource(hello));
+                });
+                start.countDown();
+                release.get(10, TimeUnit.SECONDS);
+                try (ContentStore.ContentRef added = add.get(10, TimeUnit.SECONDS)) {
+                    // the release must not delete the file of the new add
+                    assertArrayEquals(hello, IOUtils.getBytes(added));
+                }
+            }
+            assertEquals(0, fileCount(tempDir));
+        }
+    }
+
+    @Test
+    public void testClosedStore() throws Exception {
+        ContentStore store = new ContentStore();
+        ContentStore.ContentRef ref = store.add(new ByteArrayResource("hello".getBytes()));
+        store.close();
+        assertTrue(store.isClosed());
+        assertEquals(0, store.getPayloadCount());
+        assertThrows(IOException.class, () -> ref.inputStream());
+        assertThrows(IOException.class, () -> store.add(new ByteArrayResource("hello".getBytes())));
+        // releasing after the store is closed is harmless
+        ref.close();
+    }
+
+    @Test
+    public void testAlgorithm() throws Exception {
+        ContentStore store = new ContentStore("MD5", null);
+        ContentStore.ContentRef ref = store.add(new ByteArrayResource("hello".getBytes()));
+        assertEquals("5d41402abc4b2a76b9719d911017c592", ref.getDigest());
+        assertThrows(NoSuchAlgorithmException.class, () -> new ContentStore("unknown", null));
+    }
+}
@@ -0,0 +1,37 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class CountingOutputStreamTest {
+
+    @Test
+    public void testWriteByte() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        CountingOutputStream cout = new CountingOutputStream(bout);
+        cout.write(1);
+        cout.write(2);
+        assertEquals(2, cout.getByteCount());
+        assertArrayEquals(new byte[]{1, 2}, bout.toByteArray());
+    }
+
+    @Test
+    public void testWriteArray() throws IOException {
+        byte[] bytes = "This is a counting test.".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        CountingOutputStream cout = new CountingOutputStream(bout);
+        cout.write(bytes);
+        assertEquals(bytes.length, cout.getByteCount());
+        cout.write(bytes, 5, 2);
+        assertEquals(bytes.length + 2, cout.getByteCount());
+        assertEquals(bytes.length + 2, bout.size());
+    }
+}
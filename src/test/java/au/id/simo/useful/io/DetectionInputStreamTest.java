@@ -11,6 +11,7 @@ import au.id.simo.useful.io.DetectionInputStream.Match;
 import static org.junit.jupiter.api.Assertions.*;
 
 import au.id.simo.useful.io.DetectionInputStream.OnMatch;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -102,4 +103,88 @@ public class DetectionInputStreamTest implements InputStreamTest {
             return true;
         }
     }
+
+    @ParameterizedTest
+    @MethodSource("testSource")
+    public void testReadSmallBlocks(String testStr, String detectStr, int expectedMatchCount,  String remainder) throws Exception {
+        ByteArrayInputStream bin = new ByteArrayInputStream(testStr.getBytes());
+        FilterOnMatch matchListener = new FilterOnMatch();
+        Match match = new Match(detectStr.getBytes(), matchListener);
+        // blocks smaller than the match bytes, so matches span blocks
+        DetectionInputStream din = new DetectionInputStream(bin, match, 1);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        IOUtils.copy(din, bout);
+        assertEquals(expectedMatchCount, matchListener.matchCount, "Verify match count");
+        assertEquals(remainder, bout.toString(),"Verify expected output");
+    }
+
+    @Test
+    public void testLargeStream() throws Exception {
+        StringBuilder source = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            source.append(i).append("<MATCH>");
+            expected.append(i);
+        }
+        FilterOnMatch matchListener = new FilterOnMatch();
+        Match match = new Match("<MATCH>".getBytes(), matchListener);
+        DetectionInputStream din = new DetectionInputStream(
+                new ByteArrayInputStream(source.toString().getBytes()), match, 100
+        );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        IOUtils.copy(din, bout);
+        assertEquals(20_000, matchListener.matchCount);
+        assertEquals(expected.toString(), bout.toString());
+    }
+
+    @Test
+    public void testUnfilteredMatch() throws Exception {
+        int[] matchCount = new int[1];
+        Match match = new Match("AA".getBytes(), detected -> {
+            matchCount[0]++;
+            return false;
+        });
+        DetectionInputStream din = new DetectionInputStream(new ByteArrayInputStream("xAAAy".getBytes()), match);
+        assertEquals("xAAAy", new String(IOUtils.getBytes(din)));
+        // detected at each position the match bytes start
+        assertEquals(2, matchCount[0]);
+    }
+
+    @Test
+    public void testMatchOnlyActedOnWhenReached() throws Exception {
+        FilterOnMatch matchListener = new FilterOnMatch();
+        Match match = new Match("password: ".getBytes(), matchListener);
+        DetectionInputStream din = new DetectionInputStream(
+                new ByteArrayInputStream("prompt password: output".getBytes()), match
+        );
+        byte[] buf = new byte[100];
+        assertEquals(7, din.read(buf));
+        assertEquals(0, matchListener.matchCount);
+        assertEquals('o', din.read());
+        assertEquals(1, matchListener.matchCount);
+    }
+
+    @Test
+    public void testSkipDetects() throws Exception {
+        FilterOnMatch matchListener = new FilterOnMatch();
+        Match match = new Match("oy".getBytes(), matchListener);
+        DetectionInputStream din = new DetectionInputStream(
+                new ByteArrayInputStream("a boy, a toy".getBytes()), match
+        );
+        assertEquals(7, din.skip(7));
+        assertEquals(1, matchListener.matchCount);
+        // "a b, a " skipped
+        assertEquals('t', din.read());
+        assertEquals(-1, din.read());
+        assertEquals(2, matchListener.matchCount);
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        Match match = Match.replace("oy".getBytes(), "irl".getBytes());
+        DetectionInputStream din = new DetectionInputStream(
+                new ByteArrayInputStream("a boy, a toy".getBytes()), match, 4
+        );
+        assertEquals("a birl, a tirl", new String(IOUtils.getBytes(din)));
+    }
 }
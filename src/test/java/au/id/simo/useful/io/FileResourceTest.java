@@ -1,10 +1,21 @@
 package au.id.simo.useful.io;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
@@ -80,4 +91,144 @@ public class FileResourceTest implements ResourceTest {
         assertEquals(tempFile.toAbsolutePath(), fr.getPath().toAbsolutePath());
         assertArrayEquals("Hello there".getBytes(), Files.readAllBytes(tempFile));
     }
+
+    @Test
+    public void testReadAllAsync_DefaultPool() throws Exception {
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        FileResource fr = createResource(data, null);
+        assertArrayEquals(data, fr.readAllAsync().get(5, TimeUnit.SECONDS));
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(data.length, fr.copyToAsync(bout).get(5, TimeUnit.SECONDS));
+        assertArrayEquals(data, bout.toByteArray());
+    }
+
+    @Test
+    public void testReadAllAsync_Executor() throws Exception {
+        byte[] data = testData(200_000);
+        FileResource fr = createResource(data, null);
+        AtomicInteger executed = new AtomicInteger();
+        // not an ExecutorService, so cannot be used by an AsynchronousFileChannel
+        Executor executor = command -> {
+            executed.incrementAndGet();
+            command.run();
+        };
+        assertArrayEquals(data, fr.readAllAsync(executor).get(5, TimeUnit.SECONDS));
+        assertEquals(1, executed.get());
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(data.length, fr.copyToAsync(bout, executor).get(5, TimeUnit.SECONDS));
+        assertArrayEquals(data, bout.toByteArray());
+        assertEquals(2, executed.get());
+    }
+
+    @Test
+    public void testReadAllAsync_FileNotFound() {
+        FileResource fr = new FileResource(tempDir.resolve("missing.txt"));
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> {
+            fr.readAllAsync().get(5, TimeUnit.SECONDS);
+        });
+        assertTrue(ex.getCause() instanceof IOException);
+        ex = assertThrows(ExecutionException.class, () -> {
+            fr.copyToAsync(new ByteArrayOutputStream()).get(5, TimeUnit.SECONDS);
+        });
+        assertTrue(ex.getCause() instanceof IOException);
+    }
+
+    private static byte[] testData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testCopyTo_FileOutputStream() throws Exception {
+        byte[] data = testData(200_000);
+        FileResource fr = createResource(data, null);
+        Path target = tempDir.resolve("target.bin");
+        try (FileOutputStream out = new FileOutputStream(target.toFile())) {
+            out.write(1);
+            // transferred after the already written byte
+            assertEquals(data.length, fr.copyTo(out));
+        }
+        byte[] written = Files.readAllBytes(target);
+        Files.delete(target);
+        assertEquals(data.length + 1, written.length);
+        assertEquals(1, written[0]);
+        assertEquals(data[data.length - 1], written[written.length - 1]);
+    }
+
+    @Test
+    public void testCopyTo_Channel() throws Exception {
+        byte[] data = testData(200_000);
+        FileResource fr = createResource(data, null);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(data.length, fr.copyTo(Channels.newChannel(bout)));
+        assertArrayEquals(data, bout.toByteArray());
+    }
+
+    @Test
+    public void testCopyTo_ChannelNoTransferProgress() throws Exception {
+        byte[] data = testData(20_000);
+        FileResource fr = createResource(data, null);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        WritableByteChannel bchannel = Channels.newChannel(bout);
+        // refuses writes made by FileChannel.transferTo, so the transfer
+        // never progresses.
+        WritableByteChannel target = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                for (StackTraceElement frame : new Throwable().getStackTrace()) {
+                    if ("transferTo".equals(frame.getMethodName())
+                            && !FileResource.class.getName().equals(frame.getClassName())) {
+                        return 0;
+                    }
+                }
+                return bchannel.write(src);
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertEquals(data.length, fr.copyTo(target));
+        });
+        assertArrayEquals(data, bout.toByteArray());
+    }
+
+    @Test
+    public void testMapThreshold() throws Exception {
+        byte[] data = testData(10_000);
+        FileResource fr = createResource(data, null).setMapThreshold(0);
+        assertArrayEquals(data, IOUtils.getBytes(fr));
+        try (InputStream in = fr.inputStream()) {
+            assertEquals(data.length, in.available());
+            assertEquals(0, in.read());
+            assertEquals(100, in.skip(100));
+            byte[] buf = new byte[10];
+            in.mark(10);
+            assertEquals(10, in.read(buf, 0, 10));
+            assertEquals(101, buf[0]);
+            in.reset();
+            assertEquals(101, in.read());
+            assertEquals(data.length - 102, in.skip(data.length));
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(buf, 0, 10));
+        }
+
+        // below the threshold, read normally
+        fr.setMapThreshold(data.length + 1);
+        assertArrayEquals(data, IOUtils.getBytes(fr));
+    }
 }
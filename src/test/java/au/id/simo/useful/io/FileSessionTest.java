@@ -112,4 +112,35 @@ public class FileSessionTest implements URLSessionTest {
         assertFalse(Files.exists(sessionRootPath.resolve("path/to")));
     }
 
+
+    @Test
+    public void testRegisterFileResource(@TempDir Path testFolder) throws Exception {
+        Path source = testFolder.resolve("source.txt");
+        Files.write(source, "This is a test file".getBytes());
+        File sessionRoot = testFolder.resolve("filesession").toFile();
+        sessionRoot.mkdirs();
+
+        FileSession session = new FileSession(sessionRoot);
+        session.register("copy.txt", new FileResource(source));
+        assertArrayEquals(
+                "This is a test file".getBytes(),
+                Files.readAllBytes(new File(sessionRoot, "copy.txt").toPath())
+        );
+    }
+
+    @Test
+    public void testWriteBufferSize(@TempDir Path testFolder) throws Exception {
+        File sessionRoot = testFolder.resolve("filesession").toFile();
+        sessionRoot.mkdirs();
+
+        FileSession session = new FileSession(sessionRoot);
+        assertEquals(FileSession.DEFAULT_WRITE_BUFFER_SIZE, session.getWriteBufferSize());
+        assertThrows(IllegalArgumentException.class, () -> session.setWriteBufferSize(0));
+        session.setWriteBufferSize(16).register("test.txt", out -> {
+            for (int i = 0; i < 100; i++) {
+                out.write(i);
+            }
+        });
+        assertEquals(100, Files.size(new File(sessionRoot, "test.txt").toPath()));
+    }
 }
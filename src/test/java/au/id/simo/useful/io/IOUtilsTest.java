@@ -0,0 +1,227 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.simo.useful.Defer;
+import au.id.simo.useful.test.ManualExecutorService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ *
+ */
+public class IOUtilsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] testData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        byte[] data = testData(100_000);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(data.length, IOUtils.copy(new ByteArrayInputStream(data), bout));
+        assertArrayEquals(data, bout.toByteArray());
+    }
+
+    @Test
+    public void testCopy_BufferSize() throws Exception {
+        byte[] data = testData(1000);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        assertEquals(data.length, IOUtils.copy(new ByteArrayInputStream(data), bout, 7));
+        assertArrayEquals(data, bout.toByteArray());
+        assertThrows(IllegalArgumentException.class, () -> {
+            IOUtils.copy(new ByteArrayInputStream(data), bout, 0);
+        });
+    }
+
+    @Test
+    public void testCopy_Nested() throws Exception {
+        byte[] outer = testData(100_000);
+        byte[] inner = testData(50_000);
+        ByteArrayOutputStream innerOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream outerOut = new ByteArrayOutputStream();
+        // copying within a copy on the same thread must not share the buffer
+        OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                outerOut.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                IOUtils.copy(new ByteArrayInputStream(inner), innerOut);
+                outerOut.write(b, off, len);
+            }
+        };
+        IOUtils.copy(new ByteArrayInputStream(outer), out);
+        assertArrayEquals(outer, outerOut.toByteArray());
+        byte[] innerCopies = innerOut.toByteArray();
+        for (int i = 0; i < innerCopies.length; i++) {
+            assertEquals(inner[i % inner.length], innerCopies[i]);
+        }
+    }
+
+    @Test
+    public void testCopy_Files() throws Exception {
+        byte[] data = testData(200_000);
+        Path source = tempDir.resolve("source.bin");
+        Path target = tempDir.resolve("target.bin");
+        Files.write(source, data);
+        try (FileInputStream in = new FileInputStream(source.toFile());
+                FileOutputStream out = new FileOutputStream(target.toFile())) {
+            // copies from the current position
+            assertEquals(0, in.read());
+            assertEquals(data.length - 1, IOUtils.copy(in, out));
+            assertEquals(-1, in.read());
+        }
+        byte[] copied = Files.readAllBytes(target);
+        assertEquals(data.length - 1, copied.length);
+        assertEquals(data[1], copied[0]);
+        assertEquals(data[data.length - 1], copied[copied.length - 1]);
+    }
+
+    @Test
+    public void testCopy_FilesNotSeekable() throws Exception {
+        Path fifo = tempDir.resolve("source.fifo");
+        Path target = tempDir.resolve("target.bin");
+        int exitCode;
+        try {
+            exitCode = new ProcessBuilder("mkfifo", fifo.toString()).start().waitFor();
+        } catch (IOException ex) {
+            exitCode = -1;
+        }
+        assumeTrue(exitCode == 0, "mkfifo not available");
+        byte[] data = testData(200_000);
+        try (Defer defer = new Defer()) {
+            ExecutorService executor = defer.shutdown(Executors.newSingleThreadExecutor());
+            Future<?> writer = executor.submit(() -> {
+                try (FileOutputStream fifoOut = new FileOutputStream(fifo.toFile())) {
+                    fifoOut.write(data);
+                }
+                return null;
+            });
+            try (FileInputStream in = new FileInputStream(fifo.toFile());
+                    FileOutputStream out = new FileOutputStream(target.toFile())) {
+                assertEquals(data.length, IOUtils.copy(in, out));
+            }
+            writer.get(10, TimeUnit.SECONDS);
+        }
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testSkipFully() throws Exception {
+        ByteArrayInputStream in = new ByteArrayInputStream(testData(100));
+        assertEquals(0, IOUtils.skipFully(in, -1));
+        assertEquals(0, IOUtils.skipFully(in, 0));
+        assertEquals(60, IOUtils.skipFully(in, 60));
+        assertEquals(40, IOUtils.skipFully(in, 60));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testCopy_ByteCopyConsumer() throws Exception {
+        byte[] data = testData(100_000);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        long count = IOUtils.copy(new ByteArrayInputStream(data), (total, src, srcLength) -> {
+            assertEquals(bout.size(), total);
+            bout.write(src, 0, srcLength);
+        });
+        assertEquals(data.length, count);
+        assertArrayEquals(data, bout.toByteArray());
+    }
+
+    @Test
+    public void testCopyCallable_ResourceToPath() throws Exception {
+        byte[] data = testData(10_000);
+        Path target = tempDir.resolve("a").resolve("b").resolve("target.bin");
+        long count = IOUtils.copyCallable(new ByteArrayResource(data), target).call();
+        assertEquals(data.length, count);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testCopyAll() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Long>> copies = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path target = tempDir.resolve("copy" + i + ".bin");
+            Callable<Long> copy = IOUtils.copyCallable(new ByteArrayResource(testData(1000 + i)), target);
+            copies.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                    return copy.call();
+                } finally {
+                    running.decrementAndGet();
+                }
+            });
+        }
+        copies.add(() -> {
+            throw new IOException("failed copy");
+        });
+
+        CopyResults results;
+        try (Defer defer = new Defer()) {
+            ExecutorService executor = defer.shutdown(Executors.newFixedThreadPool(8));
+            results = IOUtils.copyAll(copies, executor, 3);
+        }
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(21, results.getResults().size());
+        assertEquals(20, results.getSuccessCount());
+        assertEquals(20 * 1000 + 190, results.getTotalBytes());
+        assertEquals(1001, results.getResults().get(1).getByteCount());
+        assertTrue(results.getResults().get(1).getElapsedTime(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(results.getElapsedTime(TimeUnit.NANOSECONDS) > 0);
+        assertEquals(1, results.getFailures().size());
+        assertEquals("failed copy", results.getFailures().get(0).getMessage());
+        IOException ex = assertThrows(IOException.class, () -> results.throwIfFailed());
+        assertEquals("failed copy", ex.getCause().getMessage());
+        assertArrayEquals(testData(1019), Files.readAllBytes(tempDir.resolve("copy19.bin")));
+    }
+
+    @Test
+    public void testCopyAll_Rejected() throws Exception {
+        ManualExecutorService executor = new ManualExecutorService();
+        executor.shutdown();
+        List<Callable<Long>> copies = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            copies.add(IOUtils.copyCallable(
+                    new ByteArrayInputStream(testData(100)),
+                    new ByteArrayOutputStream()
+            ));
+        }
+        CopyResults results = IOUtils.copyAll(copies, executor, 2);
+        assertEquals(5, results.getSuccessCount());
+        assertEquals(500, results.getTotalBytes());
+        results.throwIfFailed();
+        assertThrows(IllegalArgumentException.class, () -> IOUtils.copyAll(copies, executor, 0));
+    }
+}
@@ -0,0 +1,86 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class MessageDigestsTest {
+
+    private static final byte[] TEST_DATA = "This is some text that will be hashed.".getBytes(StandardCharsets.UTF_8);
+
+    static Stream<Arguments> knownHashes() {
+        return Stream.of(
+                Arguments.of("MD5", "ae9626dfbb2fffc0daa201e7bc032ba1"),
+                Arguments.of(MessageDigests.CRC32, "7b61a3ba"),
+                Arguments.of(MessageDigests.ADLER32, "0bbb0d99")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("knownHashes")
+    public void testKnownHashes(String algorithm, String expected) throws Exception {
+        // twice, to check the cloned instance matches the first
+        for (int i = 0; i < 2; i++) {
+            HashInputStream hin = new HashInputStream(new ByteArrayInputStream(TEST_DATA), algorithm);
+            IOUtils.copy(hin, new ByteArrayOutputStream());
+            assertEquals(expected, hin.getHashString());
+        }
+    }
+
+    @Test
+    public void testInstancesIndependent() throws Exception {
+        MessageDigest md1 = MessageDigests.newInstance("SHA-256");
+        MessageDigest md2 = MessageDigests.newInstance("SHA-256");
+        assertNotSame(md1, md2);
+        md1.update(TEST_DATA);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(), md2.digest());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(TEST_DATA), md1.digest());
+    }
+
+    @Test
+    public void testChecksumReset() throws Exception {
+        MessageDigest crc = MessageDigests.newInstance(MessageDigests.CRC32);
+        assertEquals(4, crc.getDigestLength());
+        crc.update(TEST_DATA);
+        assertEquals("7b61a3ba", MessageDigests.toHexString(crc.digest()));
+        // digest resets, so the next one is of no data
+        assertEquals("00000000", MessageDigests.toHexString(crc.digest()));
+    }
+
+    @Test
+    public void testCrc32c() throws Exception {
+        MessageDigest crc;
+        try {
+            crc = MessageDigests.newInstance(MessageDigests.CRC32C);
+        } catch (NoSuchAlgorithmException ex) {
+            // not available before Java 9
+            return;
+        }
+        crc.update("123456789".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("e3069283", MessageDigests.toHexString(crc.digest()));
+    }
+
+    @Test
+    public void testToHexString() {
+        assertEquals("", MessageDigests.toHexString(new byte[0]));
+        assertEquals("00017f80ff", MessageDigests.toHexString(new byte[]{0, 1, 127, -128, -1}));
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        assertThrows(NoSuchAlgorithmException.class, () -> MessageDigests.newInstance("Nonsense algo here"));
+    }
+}
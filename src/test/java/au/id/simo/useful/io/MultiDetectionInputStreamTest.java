@@ -0,0 +1,156 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import au.id.simo.useful.io.DetectionInputStream.Match;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class MultiDetectionInputStreamTest implements InputStreamTest {
+
+    @Override
+    public InputStream create(InputStream in) {
+        // bytes that are not in the test data
+        Match match = Match.replace(new byte[]{(byte) 0xFF, (byte) 0xFE}, new byte[0]);
+        return new MultiDetectionInputStream(in, Collections.singletonList(match));
+    }
+
+    private static String readAll(String source, List<Match> matches, int blockSize) throws IOException {
+        MultiDetectionInputStream in = new MultiDetectionInputStream(
+                new ByteArrayInputStream(source.getBytes()), matches, blockSize
+        );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        IOUtils.copy(in, bout);
+        return bout.toString();
+    }
+
+    static Stream<Arguments> replaceSource() {
+        return Stream.of(
+                Arguments.of("Hello ${name}, welcome to ${place}.", "Hello Bob, welcome to Perth."),
+                Arguments.of("${name}${name}${place}", "BobBobPerth"),
+                Arguments.of("no markers here", "no markers here"),
+                Arguments.of("${nam${name}", "${namBob"),
+                Arguments.of("ends with partial ${nam", "ends with partial ${nam"),
+                Arguments.of("", "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("replaceSource")
+    public void testReplace(String source, String expected) throws Exception {
+        List<Match> matches = Arrays.asList(
+                Match.replace("${name}".getBytes(), "Bob".getBytes()),
+                Match.replace("${place}".getBytes(), "Perth".getBytes())
+        );
+        assertEquals(expected, readAll(source, matches, DetectionInputStream.DEFAULT_BLOCK_SIZE));
+        // tiny blocks, so matches span blocks
+        assertEquals(expected, readAll(source, matches, 1));
+    }
+
+    @Test
+    public void testPerPatternCallbacks() throws Exception {
+        int[] counts = new int[3];
+        List<Match> matches = new ArrayList<>();
+        matches.add(new Match("cat".getBytes(), detected -> {
+            counts[0]++;
+            return true;
+        }));
+        matches.add(new Match("dog".getBytes(), detected -> {
+            counts[1]++;
+            return false;
+        }));
+        matches.add(new Match("bird".getBytes(), "fish".getBytes(), detected -> {
+            counts[2]++;
+            return true;
+        }));
+        String result = readAll("cat dog bird cat dogcat birdbird", matches, 4);
+        assertEquals(" dog fish  dog fishfish", result);
+        assertArrayEquals(new int[]{3, 2, 3}, counts);
+    }
+
+    @Test
+    public void testOverlappingPatterns() throws Exception {
+        List<Match> matches = Arrays.asList(
+                Match.replace("abcd".getBytes(), "1".getBytes()),
+                Match.replace("bc".getBytes(), "2".getBytes()),
+                Match.replace("abc".getBytes(), "3".getBytes())
+        );
+        // "abc" and "bc" end first, the longest "abc" is used
+        assertEquals("3d", readAll("abcd", matches, 100));
+        assertEquals("x2y", readAll("xbcy", matches, 100));
+    }
+
+    @Test
+    public void testManyPatterns() throws Exception {
+        List<Match> matches = new ArrayList<>();
+        StringBuilder source = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            matches.add(Match.replace(("<" + i + ">").getBytes(), ("[" + i + "]").getBytes()));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            source.append("text <").append(i % 60).append("> ");
+            expected.append("text ").append(i % 60 < 50 ? "[" + (i % 60) + "]" : "<" + (i % 60) + ">").append(' ');
+        }
+        assertEquals(expected.toString(), readAll(source.toString(), matches, 64));
+    }
+
+    @Test
+    public void testMatchOnlyActedOnWhenReached() throws Exception {
+        int[] count = new int[1];
+        List<Match> matches = Collections.singletonList(new Match("password: ".getBytes(), detected -> {
+            count[0]++;
+            return true;
+        }));
+        MultiDetectionInputStream in = new MultiDetectionInputStream(
+                new ByteArrayInputStream("prompt password: output".getBytes()), matches
+        );
+        byte[] buf = new byte[100];
+        assertEquals(7, in.read(buf));
+        assertEquals(0, count[0]);
+        assertEquals('o', in.read());
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void testSkipAndAvailable() throws Exception {
+        List<Match> matches = Collections.singletonList(Match.replace("ab".getBytes(), "XYZ".getBytes()));
+        MultiDetectionInputStream in = new MultiDetectionInputStream(
+                new ByteArrayInputStream("1ab2".getBytes()), matches
+        );
+        assertEquals('1', in.read());
+        assertEquals('X', in.read());
+        assertEquals(2, in.available());
+        assertEquals(3, in.skip(3));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiDetectionInputStream(in, Collections.emptyList());
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiDetectionInputStream(in, Collections.singletonList(Match.replace(new byte[0], new byte[0])));
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new MultiDetectionInputStream(in, Collections.singletonList(Match.replace(new byte[1], new byte[0])), 0);
+        });
+    }
+}
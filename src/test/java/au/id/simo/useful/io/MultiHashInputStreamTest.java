@@ -0,0 +1,100 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import au.id.simo.useful.Defer;
+import au.id.simo.useful.test.ManualExecutorService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class MultiHashInputStreamTest implements InputStreamTest {
+
+    private static final String[] ALGORITHMS = {"SHA-256", "MD5", MessageDigests.CRC32};
+
+    @Override
+    public InputStream create(InputStream in) {
+        try {
+            return new MultiHashInputStream(in, ALGORITHMS);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] testData(int length) {
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static void assertHashes(byte[] data, MultiHashInputStream in) throws Exception {
+        for (String algorithm : ALGORITHMS) {
+            MessageDigest expected = MessageDigests.newInstance(algorithm);
+            assertArrayEquals(expected.digest(data), in.getHash(algorithm), algorithm);
+        }
+    }
+
+    @Test
+    public void testSinglePass() throws Exception {
+        byte[] data = testData(100_000);
+        MultiHashInputStream in = new MultiHashInputStream(new ByteArrayInputStream(data), ALGORITHMS);
+        IOUtils.copy(in, new ByteArrayOutputStream());
+        assertHashes(data, in);
+        assertEquals(data.length, in.getByteCount());
+        assertArrayEquals(in.getHash("SHA-256"), in.getHash());
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        byte[] data = testData(100_000);
+        try (Defer defer = new Defer()) {
+            ExecutorService executor = defer.shutdown(Executors.newFixedThreadPool(3));
+            MultiHashInputStream in = new MultiHashInputStream(
+                    new ByteArrayInputStream(data), executor, 4096, ALGORITHMS
+            );
+            // mix of single byte and array reads, across block boundaries
+            for (int i = 0; i < 5000; i++) {
+                in.read();
+            }
+            IOUtils.copy(in, new ByteArrayOutputStream());
+            assertHashes(data, in);
+            assertEquals(in.getHashString("MD5"), in.getHashString("MD5"));
+        }
+    }
+
+    @Test
+    public void testRejectedRunsOnReadingThread() throws Exception {
+        byte[] data = testData(10_000);
+        ManualExecutorService executor = new ManualExecutorService();
+        executor.shutdown();
+        MultiHashInputStream in = new MultiHashInputStream(
+                new ByteArrayInputStream(data), executor, 1000, ALGORITHMS
+        );
+        IOUtils.copy(in, new ByteArrayOutputStream());
+        assertHashes(data, in);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> new MultiHashInputStream(in));
+        assertThrows(IllegalArgumentException.class, () -> new MultiHashInputStream(in, null, 0, "MD5"));
+        assertThrows(NoSuchAlgorithmException.class, () -> new MultiHashInputStream(in, "Nonsense"));
+    }
+
+    @Test
+    public void testUnknownHash() throws Exception {
+        MultiHashInputStream in = new MultiHashInputStream(new ByteArrayInputStream(new byte[0]), "MD5");
+        assertThrows(IllegalArgumentException.class, () -> in.getHash("SHA-256"));
+    }
+}
@@ -0,0 +1,215 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import au.id.simo.useful.Defer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class PartitionedGeneratorResourceTest implements ResourceTest {
+
+    @Override
+    public Resource createResource(byte[] testData, Charset charset) throws IOException {
+        // split the test data into three sections
+        List<Generator> sections = new ArrayList<>();
+        int sectionLength = (testData.length / 3) + 1;
+        for (int i = 0; i < testData.length; i += sectionLength) {
+            final int start = i;
+            final int length = Math.min(sectionLength, testData.length - i);
+            sections.add(out -> out.write(testData, start, length));
+        }
+        return new PartitionedGeneratorResource(sections);
+    }
+
+    @Test
+    public void testSectionsReadInOrder() throws Exception {
+        // the last section is generated first, the first section last.
+        CountDownLatch thirdDone = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+        List<Generator> sections = Arrays.asList(
+                out -> {
+                    await(secondDone);
+                    out.write("first ".getBytes(StandardCharsets.UTF_8));
+                },
+                out -> {
+                    await(thirdDone);
+                    out.write("second ".getBytes(StandardCharsets.UTF_8));
+                    secondDone.countDown();
+                },
+                out -> {
+                    out.write("third".getBytes(StandardCharsets.UTF_8));
+                    thirdDone.countDown();
+                }
+        );
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(3));
+            Resource res = new PartitionedGeneratorResource(service, sections, 3);
+            assertEquals("first second third", IOUtils.getStringAsUTF8(res));
+        }
+    }
+
+    @Test
+    public void testMaxActiveSections() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        List<Generator> sections = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int sectionNo = i;
+            sections.add(out -> {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    for (int j = 0; j < 100; j++) {
+                        out.write(sectionNo);
+                    }
+                } finally {
+                    active.decrementAndGet();
+                }
+            });
+        }
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(8));
+            Resource res = new PartitionedGeneratorResource(service, sections, 10, 2);
+            byte[] bytes = IOUtils.getBytes(res);
+            assertEquals(2000, bytes.length);
+            for (int i = 0; i < bytes.length; i++) {
+                assertEquals(i / 100, bytes[i]);
+            }
+        }
+        assertTrue(maxActive.get() <= 2, "No more than 2 sections generated at once");
+    }
+
+    @Test
+    public void testSectionException() throws Exception {
+        List<Generator> sections = Arrays.asList(
+                out -> out.write(1),
+                out -> {
+                    out.write(2);
+                    throw new IOException("Manually thrown exception");
+                },
+                out -> out.write(3)
+        );
+        Resource res = new PartitionedGeneratorResource(sections);
+        try (InputStream in = res.inputStream()) {
+            assertEquals(1, in.read());
+            assertEquals(2, in.read());
+            IOException ioe = assertThrows(IOException.class, () -> in.read());
+            assertEquals("Manually thrown exception", ioe.getMessage());
+        }
+    }
+
+    @Test
+    public void testCloseBeforeComplete() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Generator> sections = Arrays.asList(
+                out -> out.write(1),
+                out -> {
+                    await(release);
+                    out.write(2);
+                }
+        );
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(2));
+            Resource res = new PartitionedGeneratorResource(service, sections, 2);
+            InputStream in = res.inputStream();
+            assertEquals(1, in.read());
+            in.close();
+            release.countDown();
+            assertThrows(IOException.class, () -> in.read());
+        }
+    }
+
+    @Test
+    public void testStalledAfterEndOfSection() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Generator> sections = Arrays.asList(
+                out -> {
+                    out.write(1);
+                    out.close();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException ex) {
+                        interrupted.countDown();
+                    }
+                },
+                out -> out.write(2)
+        );
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(2));
+            Resource res = new PartitionedGeneratorResource(service, sections, 2)
+                    .setCloseTimeout(50, TimeUnit.MILLISECONDS);
+            try (InputStream in = res.inputStream()) {
+                assertEquals(1, in.read());
+                // waits no longer than the close timeout for the first
+                // section, then cancels it and moves on.
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    assertEquals(2, in.read());
+                });
+            }
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testNoSections() throws Exception {
+        Resource res = new PartitionedGeneratorResource(new ArrayList<Generator>());
+        try (InputStream in = res.inputStream()) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        List<Generator> sections = new ArrayList<>();
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PartitionedGeneratorResource(service, sections, 0, 1);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PartitionedGeneratorResource(service, sections, 1, 0);
+        });
+        service.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Writes nothing, used to verify generics of the constructor.
+     */
+    private static class EmptyGenerator implements Generator {
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.flush();
+        }
+    }
+
+    @Test
+    public void testGeneratorSubtypeList() throws Exception {
+        List<EmptyGenerator> sections = Arrays.asList(new EmptyGenerator(), new EmptyGenerator());
+        Resource res = new PartitionedGeneratorResource(sections);
+        assertEquals(0, IOUtils.getBytes(res).length);
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.*;
 
@@ -25,6 +26,84 @@ public class PipeOutputStreamTest {
         assertArrayEquals(expectedArray, readArray);
     }
 
+    @Test
+    void testWriteOffsetLargerThanBuffer() throws IOException {
+        PipeOutputStream rout = new PipeOutputStream(4);
+        final byte[] writeArray = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        final byte[] expectedArray = {3, 4, 5, 6, 7, 8};
+
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            Future<byte[]> readFuture = service.submit(() -> IOUtils.getBytes(rout.getInputStream()));
+            rout.write(writeArray, 2, 6);
+            rout.close();
+            assertArrayEquals(expectedArray, readFuture.get());
+        } catch (InterruptedException | ExecutionException e) {
+            fail(e);
+        }
+    }
+
+    @Test
+    void testReadTimeout() throws IOException {
+        PipeOutputStream rout = new PipeOutputStream(10).setReadTimeout(10, TimeUnit.MILLISECONDS);
+        rout.write(1);
+        InputStream in = rout.getInputStream();
+        assertEquals(1, in.read());
+        InterruptedIOException ex = assertThrows(InterruptedIOException.class, () -> in.read());
+        assertEquals("Read timed out", ex.getMessage());
+        // still usable after a timeout
+        rout.write(2);
+        assertEquals(2, in.read());
+    }
+
+    @Test
+    void testDeadline() throws IOException {
+        PipeOutputStream rout = new PipeOutputStream(1).setDeadline(10, TimeUnit.MILLISECONDS);
+        rout.write(1);
+        // buffer is full, so the write blocks until the deadline
+        InterruptedIOException ex = assertThrows(InterruptedIOException.class, () -> rout.write(2));
+        assertEquals("Deadline exceeded", ex.getMessage());
+        // bytes in the buffer are still readable
+        InputStream in = rout.getInputStream();
+        assertEquals(1, in.read());
+        assertThrows(InterruptedIOException.class, () -> in.read());
+    }
+
+    @Test
+    void testCloseInputStreamReleasesWriter() throws Exception {
+        PipeOutputStream rout = new PipeOutputStream(1);
+        rout.write(1);
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            // blocks as the buffer is full
+            Future<Object> writeFuture = service.submit(() -> {
+                rout.write(2);
+                return null;
+            });
+            assertFalse(rout.isClosed());
+            rout.getInputStream().close();
+            assertTrue(rout.isClosed());
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> writeFuture.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    void testInterruptedWriterNotRefused() throws Exception {
+        PipeOutputStream rout = new PipeOutputStream(1);
+        rout.write(1);
+        rout.getInputStream().close();
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> rout.write(2));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertFalse(rout.isWriteRefused());
+        assertThrows(IOException.class, () -> rout.write(2));
+        assertTrue(rout.isWriteRefused());
+    }
+
     @Test
     void testTwoThreadsHappy() throws InterruptedException, ExecutionException {
         PipeOutputStream pipeOutputStream = new PipeOutputStream(1024);
@@ -0,0 +1,99 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import au.id.simo.useful.Defer;
+import au.id.simo.useful.datagen.DataGenFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class PrefetchResourceTest implements ResourceTest {
+
+    @Override
+    public Resource createResource(byte[] testData, Charset charset) throws IOException {
+        return new PrefetchResource(new ByteArrayResource(testData), 4, 2);
+    }
+
+    @Test
+    public void testReadsAhead() throws Exception {
+        // the source signals once 3 chunks have been read from it.
+        CountDownLatch chunksRead = new CountDownLatch(3);
+        Resource source = () -> new FilterInputStream(DataGenFactory.incrementingBytes(100)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int readCount = super.read(b, off, len);
+                chunksRead.countDown();
+                return readCount;
+            }
+        };
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            PrefetchResource res = new PrefetchResource(service, source, 10, 3);
+            try (InputStream in = res.inputStream()) {
+                // chunks are read without the consumer reading anything.
+                assertTrue(chunksRead.await(5, TimeUnit.SECONDS));
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, in.read());
+                }
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void testSourceException() throws Exception {
+        Resource source = () -> {
+            throw new IOException("Manually thrown exception");
+        };
+        PrefetchResource res = new PrefetchResource(source);
+        IOException ioe = assertThrows(IOException.class, () -> {
+            try (InputStream in = res.inputStream()) {
+                IOUtils.drain(in);
+            }
+        });
+        assertEquals("Manually thrown exception", ioe.getMessage());
+    }
+
+    @Test
+    public void testPrefetchInputStream() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream source = new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+        try (InputStream in = PrefetchResource.prefetch(source, 2, 2)) {
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, IOUtils.getBytes(in));
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Resource source = new ByteArrayResource(new byte[0]);
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrefetchResource(source, 0, 1);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrefetchResource(source, 1, 0);
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            new PrefetchResource(source, Integer.MAX_VALUE, 2);
+        });
+    }
+}
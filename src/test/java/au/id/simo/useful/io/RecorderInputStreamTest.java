@@ -29,6 +29,17 @@ public class RecorderInputStreamTest {
         assertArrayEquals(expected, rin.getReadByteArray());
     }
     
+    @Test
+    public void testSkipRecorded() throws Exception {
+        byte testData[] = new byte[] {1, 2, 3, 4, 5};
+        RecorderInputStream rin = new RecorderInputStream(new ByteArrayInputStream(testData));
+        assertFalse(rin.markSupported());
+        assertEquals(1, rin.read());
+        assertEquals(3, rin.skip(3));
+        assertEquals(0, rin.skip(-1));
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, rin.getReadByteArray());
+    }
+
     @Test
     public void testRead_3args_limits() throws Exception {
         byte testData[] = new byte[] {
@@ -0,0 +1,117 @@
+package au.id.simo.useful.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import au.id.simo.useful.io.DetectionInputStream.Match;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class ReplacingOutputStreamTest {
+
+    private static final List<Match> MATCHES = Arrays.asList(
+            Match.replace("${name}".getBytes(), "Bob".getBytes()),
+            Match.replace("${place}".getBytes(), "a very long place name".getBytes()),
+            Match.replace("\r\n".getBytes(), "\n".getBytes())
+    );
+
+    static Stream<Arguments> replaceSource() {
+        return Stream.of(
+                Arguments.of("Hello ${name}, welcome to ${place}.", "Hello Bob, welcome to a very long place name."),
+                Arguments.of("${name}${name}\r\n", "BobBob\n"),
+                Arguments.of("no markers here", "no markers here"),
+                Arguments.of("$${nam${name}", "$${namBob"),
+                Arguments.of("ends with partial ${nam", "ends with partial ${nam"),
+                Arguments.of("\r\r\n\n", "\r\n\n"),
+                Arguments.of("", "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("replaceSource")
+    public void testWriteArray(String source, String expected) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ReplacingOutputStream out = new ReplacingOutputStream(bout, MATCHES)) {
+            out.write(source.getBytes());
+        }
+        assertEquals(expected, bout.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("replaceSource")
+    public void testWriteSingleBytes(String source, String expected) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ReplacingOutputStream out = new ReplacingOutputStream(bout, MATCHES)) {
+            for (byte b : source.getBytes()) {
+                out.write(b);
+            }
+        }
+        assertEquals(expected, bout.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("replaceSource")
+    public void testWriteChunks(String source, String expected) throws Exception {
+        byte[] bytes = source.getBytes();
+        for (int chunk = 1; chunk < 10; chunk++) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            try (ReplacingOutputStream out = new ReplacingOutputStream(bout, MATCHES)) {
+                for (int i = 0; i < bytes.length; i += chunk) {
+                    out.write(bytes, i, Math.min(chunk, bytes.length - i));
+                }
+            }
+            assertEquals(expected, bout.toString(), "chunk size " + chunk);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("replaceSource")
+    public void testInputStreamEquivalent(String source, String expected) throws Exception {
+        MultiDetectionInputStream in = new MultiDetectionInputStream(
+                new ByteArrayInputStream(source.getBytes()), MATCHES, 3
+        );
+        assertEquals(expected, new String(IOUtils.getBytes(in)));
+    }
+
+    @Test
+    public void testPartialMatchHeldBack() throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ReplacingOutputStream out = new ReplacingOutputStream(bout, "abc".getBytes(), "X".getBytes());
+        out.write("12ab".getBytes());
+        out.flush();
+        assertEquals("12", bout.toString());
+        out.write('d');
+        assertEquals("12abd", bout.toString());
+        out.write("ab".getBytes());
+        out.finish();
+        assertEquals("12abdab", bout.toString());
+        assertThrows(IOException.class, () -> out.write('c'));
+        out.close();
+    }
+
+    @Test
+    public void testCallbacks() throws Exception {
+        int[] count = new int[1];
+        List<Match> matches = Arrays.asList(new Match("keep".getBytes(), detected -> {
+            count[0]++;
+            return false;
+        }));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ReplacingOutputStream out = new ReplacingOutputStream(bout, matches)) {
+            out.write("keep me, keepkeep".getBytes());
+        }
+        assertEquals("keep me, keepkeep", bout.toString());
+        assertEquals(3, count[0]);
+    }
+}
@@ -0,0 +1,175 @@
+package au.id.simo.useful.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import au.id.simo.useful.Defer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class ResourceCacheTest implements ResourceTest {
+
+    @Override
+    public Resource createResource(byte[] testData, Charset charset) throws IOException {
+        return new ResourceCache(1024).cache(new ByteArrayResource(testData));
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) value;
+        }
+        return data;
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ResourceCache cache = new ResourceCache(100);
+        Resource res = cache.cache(new ByteArrayResource(bytes(10, 1)));
+
+        assertArrayEquals(bytes(10, 1), IOUtils.getBytes(res));
+        assertArrayEquals(bytes(10, 1), IOUtils.getBytes(res));
+        assertArrayEquals(bytes(10, 1), IOUtils.getBytes(res));
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(10, cache.getCachedBytes());
+        assertEquals(1, cache.getEntryCount());
+
+        cache.resetStats();
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        ResourceCache cache = new ResourceCache(25);
+        Resource res1 = cache.cache(new ByteArrayResource(bytes(10, 1)));
+        Resource res2 = cache.cache(new ByteArrayResource(bytes(10, 2)));
+        Resource res3 = cache.cache(new ByteArrayResource(bytes(10, 3)));
+
+        IOUtils.getBytes(res1);
+        IOUtils.getBytes(res2);
+        // res1 is now more recently used than res2
+        IOUtils.getBytes(res1);
+        assertEquals(1, cache.getHits());
+
+        // evicts res2 to make room
+        IOUtils.getBytes(res3);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(20, cache.getCachedBytes());
+
+        IOUtils.getBytes(res1);
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertArrayEquals(bytes(10, 2), IOUtils.getBytes(res2));
+        assertEquals(4, cache.getMisses());
+        assertTrue(cache.getCachedBytes() <= 25);
+    }
+
+    @Test
+    public void testSkipRecorded() throws Exception {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        ResourceCache cache = new ResourceCache(100);
+        Resource res = cache.cache(new ByteArrayResource(data));
+
+        try (InputStream in = res.inputStream()) {
+            assertEquals(1, in.read());
+            assertEquals(4, in.skip(4));
+            assertEquals(6, in.read());
+            assertEquals(4, in.skip(10));
+            assertEquals(-1, in.read());
+        }
+        assertEquals(10, cache.getCachedBytes());
+        assertArrayEquals(data, IOUtils.getBytes(res));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEntryTooLarge() throws Exception {
+        ResourceCache cache = new ResourceCache(100, 5);
+        Resource res = cache.cache(new ByteArrayResource(bytes(10, 1)));
+
+        assertArrayEquals(bytes(10, 1), IOUtils.getBytes(res));
+        assertArrayEquals(bytes(10, 1), IOUtils.getBytes(res));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testInvalidateAndClear() throws Exception {
+        ResourceCache cache = new ResourceCache(100);
+        Resource res1 = cache.cache(new ByteArrayResource(bytes(10, 1)));
+        Resource res2 = cache.cache(new ByteArrayResource(bytes(10, 2)));
+        IOUtils.getBytes(res1);
+        IOUtils.getBytes(res2);
+        assertEquals(20, cache.getCachedBytes());
+
+        cache.invalidate(res1);
+        assertEquals(10, cache.getCachedBytes());
+        IOUtils.getBytes(res1);
+        assertEquals(3, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.getCachedBytes());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testClearDuringRead() throws Exception {
+        ResourceCache cache = new ResourceCache(100);
+        Resource res = cache.cache(new ByteArrayResource(bytes(10, 1)));
+        try (InputStream in = res.inputStream()) {
+            assertEquals(1, in.read());
+            // the read started before the clear, so its data is stale
+            cache.clear();
+            IOUtils.drain(in);
+        }
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        ResourceCache cache = new ResourceCache(250);
+        List<Resource> resources = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            resources.add(cache.cache(new ByteArrayResource(bytes(10, i))));
+        }
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newFixedThreadPool(8));
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final int index = i % resources.size();
+                results.add(service.submit(() -> {
+                    byte[] read = IOUtils.getBytes(resources.get(index));
+                    return Arrays.equals(bytes(10, index), read);
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        }
+        assertEquals(1000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getCachedBytes() <= 250);
+        assertEquals(cache.getEntryCount() * 10, cache.getCachedBytes());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ResourceCache(-1));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceCache(10, -1));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceCache(10, 11));
+    }
+}
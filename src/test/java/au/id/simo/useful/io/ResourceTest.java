@@ -6,6 +6,9 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import au.id.simo.useful.Defer;
@@ -126,4 +129,32 @@ public interface ResourceTest {
             }
         }
     }
+
+    @Test
+    default void testCopyToAsync() throws Exception {
+        String testStr = "This is some data to test copyToAsync()";
+        Resource r = createResource(testStr.getBytes());
+
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            long copyByteCount = r.copyToAsync(bout, service).get(5, TimeUnit.SECONDS);
+            byte[] testBytes = testStr.getBytes();
+
+            assertEquals(testBytes.length, copyByteCount);
+            assertArrayEquals(testBytes, bout.toByteArray());
+        }
+    }
+
+    @Test
+    default void testReadAllAsync() throws Exception {
+        String testStr = "This is some data to test readAllAsync()";
+        Resource r = createResource(testStr.getBytes());
+
+        try (Defer defer = new Defer()) {
+            ExecutorService service = defer.shutdown(Executors.newSingleThreadExecutor());
+            byte[] readBytes = r.readAllAsync(service).get(5, TimeUnit.SECONDS);
+            assertArrayEquals(testStr.getBytes(), readBytes);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package au.id.simo.useful.io;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -14,6 +15,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import au.id.simo.useful.io.local.LocalSessionTest;
 import org.junit.jupiter.api.Test;
@@ -99,6 +102,41 @@ public interface URLSessionTest {
         }
     }
 
+    @Test
+    default void testCopyToAsync() throws Exception {
+        Resource res = new StringResource("Test resource");
+        byte[] fromRes = IOUtils.getBytes(res);
+
+        try (URLSession sess = createURLSession()) {
+            sess.register("test", res);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long copied = sess.copyToAsync("test", out, Runnable::run).get();
+            assertEquals(fromRes.length, copied);
+            assertArrayEquals(fromRes, out.toByteArray());
+        }
+    }
+
+    @Test
+    default void testCopyToAsync_ResourceNotFound() throws Exception {
+        try (URLSession sess = createURLSession()) {
+            CompletableFuture<Long> future = sess.copyToAsync("test", new ByteArrayOutputStream(), Runnable::run);
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get());
+            assertTrue(ex.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    default void testCopyToAsync_SessionClosed() throws Exception {
+        URLSession sess = createURLSession();
+        sess.register("test", new StringResource("Test resource"));
+        sess.close();
+
+        CompletableFuture<Long> future = sess.copyToAsync("test", new ByteArrayOutputStream(), Runnable::run);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get());
+        assertEquals(URLSession.SESSION_CLOSE_MSG, ex.getCause().getMessage());
+    }
+
     @Test
     default void testForEachResource() throws Exception {
         try (URLSession sess = createURLSession()) {
@@ -1,12 +1,22 @@
 package au.id.simo.useful.io;
 
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
+import au.id.simo.useful.text.VarTemplate;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,4 +78,157 @@ public class VarExpanderReaderTest {
         String outputStr = sb.toString();
         assertEquals("Hello John Doe", outputStr);
     }
+
+    private static String readAll(Reader reader) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[100];
+        int readCount;
+        while ((readCount = reader.read(buf)) != -1) {
+            sb.append(buf, 0, readCount);
+        }
+        return sb.toString();
+    }
+
+    static Stream<Arguments> expandSource() {
+        return Stream.of(
+                Arguments.of("Hello ${NAME}, from ${PLACE}.", "${", "}", "Hello John Doe, from Sydney."),
+                Arguments.of("${NAME}${NAME}", "${", "}", "John DoeJohn Doe"),
+                Arguments.of("${MISSING} removed", "${", "}", " removed"),
+                Arguments.of("$ {NAME} ${NAME ${", "${", "}", "$ {NAME} ${NAME ${"),
+                Arguments.of("cost: $5 ${NAME}", "${", "}", "cost: $5 John Doe"),
+                Arguments.of("$NAME, $PLACE. $ $", "$", null, "John Doe, Sydney. $ $"),
+                Arguments.of("%%NAME%%%%PLACE%%", "%%", "%%", "John DoeSydney"),
+                Arguments.of("no variables", "${", "}", "no variables"),
+                Arguments.of("", "${", "}", "")
+        );
+    }
+
+    private static Map<String, String> varMap() {
+        Map<String, String> varMap = new HashMap<>();
+        varMap.put("NAME", "John Doe");
+        varMap.put("PLACE", "Sydney");
+        return varMap;
+    }
+
+    @ParameterizedTest
+    @MethodSource("expandSource")
+    public void testExpand(String template, String prefix, String suffix, String expected) throws Exception {
+        for (int blockSize : new int[]{1, 2, 3, 7, VarExpanderReader.DEFAULT_BLOCK_SIZE}) {
+            VarExpanderReader reader = new VarExpanderReader(new StringReader(template), varMap(), prefix, suffix, blockSize);
+            assertEquals(expected, readAll(reader), "block size " + blockSize);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("expandSource")
+    public void testExpandSmallReads(String template, String prefix, String suffix, String expected) throws Exception {
+        VarExpanderReader reader = new VarExpanderReader(new StringReader(template), varMap(), prefix, suffix, 2);
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[10];
+        int readCount;
+        while ((readCount = reader.read(buf, 3, 2)) != -1) {
+            sb.append(buf, 3, readCount);
+        }
+        assertEquals(expected, sb.toString());
+    }
+
+    @ParameterizedTest
+    @MethodSource("expandSource")
+    public void testCompile(String template, String prefix, String suffix, String expected) throws Exception {
+        VarTemplate compiled = VarExpanderReader.compile(template, prefix, suffix);
+        assertEquals(expected, compiled.expand(varMap()));
+        StringWriter out = new StringWriter();
+        compiled.expandTo(varMap(), out);
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testCompileRenderMany() throws Exception {
+        VarTemplate compiled = VarExpanderReader.compile("Dear ${NAME}, ${NAME} lives in ${PLACE}", "${", "}");
+        assertEquals(Arrays.asList("NAME", "NAME", "PLACE"), compiled.getVarNames());
+        Map<String, String> varMap = new HashMap<>();
+        varMap.put("NAME", "Jane");
+        varMap.put("PLACE", "Perth");
+        assertEquals("Dear Jane, Jane lives in Perth", compiled.expand(varMap));
+        varMap.put("NAME", "Jo");
+        assertEquals("Dear Jo, Jo lives in Perth", readAll(compiled.reader(varMap)));
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            large.append(i);
+        }
+        Map<String, String> varMap = new HashMap<>();
+        varMap.put("LARGE", large.toString());
+        VarExpanderReader reader = new VarExpanderReader(new StringReader("[${LARGE}]"), varMap, "${", "}");
+        assertEquals("[" + large + "]", readAll(reader));
+    }
+
+    @Test
+    public void testInvalidMarkers() {
+        Map<String, String> varMap = varMap();
+        assertThrows(IllegalArgumentException.class, () -> new VarExpanderReader(new StringReader(""), varMap, "", "}"));
+        assertThrows(IllegalArgumentException.class, () -> new VarExpanderReader(new StringReader(""), varMap, "${", ""));
+        assertThrows(IllegalArgumentException.class, () -> VarExpanderReader.compile("", null, null));
+    }
+
+    @Test
+    public void testResolverOnlyReferenced() throws Exception {
+        List<String> resolved = new ArrayList<>();
+        VarExpanderReader.Resolver resolver = VarExpanderReader.Resolver.of(name -> {
+            resolved.add(name);
+            return name.toLowerCase();
+        });
+        VarExpanderReader reader = new VarExpanderReader(new StringReader("${A} ${B} ${A}"), resolver, "${", "}");
+        assertEquals("a b a", readAll(reader));
+        assertEquals(Arrays.asList("A", "B", "A"), resolved);
+    }
+
+    @Test
+    public void testResolverCached() throws Exception {
+        List<String> resolved = new ArrayList<>();
+        VarExpanderReader.Resolver resolver = VarExpanderReader.Resolver.cached(name -> {
+            resolved.add(name);
+            return "B".equals(name) ? null : name.toLowerCase();
+        });
+        String template = "${A} ${B} ${A} ${B}";
+        assertEquals("a  a ", readAll(new VarExpanderReader(new StringReader(template), resolver, "${", "}")));
+        assertEquals("a  a ", readAll(new VarExpanderReader(new StringReader(template), resolver, "${", "}")));
+        assertEquals(Arrays.asList("A", "B"), resolved);
+    }
+
+    @Test
+    public void testResolverStreamsValues() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            large.append(i);
+        }
+        List<Reader> opened = new ArrayList<>();
+        VarExpanderReader.Resolver resolver = name -> {
+            if (!"FILE".equals(name)) {
+                return null;
+            }
+            Reader valueReader = new StringReader(large.toString());
+            opened.add(valueReader);
+            return valueReader;
+        };
+        VarExpanderReader reader = new VarExpanderReader(new StringReader("<${FILE}${NONE}${FILE}>"), resolver, "${", "}", 16);
+        assertEquals("<" + large + large + ">", readAll(reader));
+        assertEquals(2, opened.size());
+        // value readers are closed once read
+        for (Reader valueReader : opened) {
+            assertThrows(IOException.class, valueReader::read);
+        }
+    }
+
+    @Test
+    public void testCloseClosesValueReader() throws Exception {
+        Reader value = new StringReader("a long value");
+        VarExpanderReader reader = new VarExpanderReader(new StringReader("${V}"), name -> value, "${", "}");
+        assertEquals('a', reader.read());
+        reader.close();
+        assertThrows(IOException.class, value::read);
+    }
 }
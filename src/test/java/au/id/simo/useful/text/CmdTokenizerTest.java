@@ -1,9 +1,16 @@
 package au.id.simo.useful.text;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import au.id.simo.useful.Defer;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -111,4 +118,113 @@ public class CmdTokenizerTest {
         assertNotNull(emptyList);
         assertEquals(0, emptyList.size());
     }
+
+    @Test
+    public void testLeadingWhitespaceAndQuotes() {
+        String cmd = "  echo a'b c'd \"\" '' \"e\"";
+        assertEquals(Arrays.asList("echo", "ab cd", "e"), CmdTokenizer.toList(cmd));
+    }
+
+    @Test
+    public void testSequenceIterator() {
+        String cmd = "ls -la 'my dir' /tmp";
+        List<CharSequence> tokens = new CmdTokenizer(cmd).toSequenceList();
+        assertEquals(4, tokens.size());
+        // tokens without quotes are views of the command
+        assertTrue(tokens.get(0) instanceof SubCharSequence);
+        assertTrue(tokens.get(1) instanceof SubCharSequence);
+        assertTrue(tokens.get(3) instanceof SubCharSequence);
+        assertEquals("ls", tokens.get(0).toString());
+        assertEquals("-la", tokens.get(1).toString());
+        assertEquals("my dir", tokens.get(2).toString());
+        assertEquals("/tmp", tokens.get(3).toString());
+    }
+
+    @Test
+    public void testTokenizeReader() throws Exception {
+        String cmds = "one 'this is two'\nthree \"this is\nfour\"\n";
+        List<String> tokens = new ArrayList<>();
+        long count = CmdTokenizer.tokenize(new StringReader(cmds), tokens::add);
+        assertEquals(4, count);
+        assertEquals(Arrays.asList("one", "this is two", "three", "this is\nfour"), tokens);
+        // same tokens as the String tokenizer
+        assertEquals(CmdTokenizer.toList(cmds), tokens);
+    }
+
+    @Test
+    public void testToLists() throws Exception {
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            commands.add("cmd" + i + " --arg '" + i + " quoted'");
+        }
+        try (Defer defer = new Defer()) {
+            ExecutorService executor = defer.shutdown(Executors.newFixedThreadPool(4));
+            List<List<String>> lists = CmdTokenizer.toLists(commands, executor, 4);
+            assertEquals(commands.size(), lists.size());
+            for (int i = 0; i < commands.size(); i++) {
+                assertEquals(Arrays.asList("cmd" + i, "--arg", i + " quoted"), lists.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testToListsRejected() throws Exception {
+        // more commands than a single batch, so worker tasks are submitted
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            commands.add("cmd" + i + " --arg");
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        List<List<String>> lists = CmdTokenizer.toLists(commands, executor, 4);
+        assertEquals(commands.size(), lists.size());
+        for (int i = 0; i < commands.size(); i++) {
+            assertEquals(Arrays.asList("cmd" + i, "--arg"), lists.get(i));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CmdTokenizer.toLists(commands, executor, 0));
+    }
+
+    @Test
+    public void testToListsWorkerFailure() throws Exception {
+        List<CharSequence> commands = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            commands.add("cmd" + i);
+        }
+        commands.set(150, new FailingCharSequence());
+        // runs the worker to completion on another thread before the calling
+        // thread tokenizes, so the worker takes every batch.
+        Executor otherThread = task -> {
+            Thread thread = new Thread(task);
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> {
+            CmdTokenizer.toLists(commands, otherThread, 2);
+        });
+        assertEquals("Unreadable command", ex.getMessage());
+    }
+
+    /**
+     * Fails on any attempt to read it, to test failures while tokenizing.
+     */
+    private static class FailingCharSequence implements CharSequence {
+        @Override
+        public int length() {
+            throw new IllegalStateException("Unreadable command");
+        }
+
+        @Override
+        public char charAt(int index) {
+            throw new IllegalStateException("Unreadable command");
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            throw new IllegalStateException("Unreadable command");
+        }
+    }
 }
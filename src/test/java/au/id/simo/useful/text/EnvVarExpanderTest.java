@@ -1,6 +1,15 @@
 package au.id.simo.useful.text;
 
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -11,10 +20,71 @@ public class EnvVarExpanderTest implements VarExpanderTest {
 
     @Test
     public void testPut() {
+        EnvVarExpander expander = new EnvVarExpander();
+        assertSame(expander, expander.put("NAME", "John"));
+        assertEquals("Hello John", expander.expand("Hello $NAME"));
+        expander.put("NAME", "Jane");
+        assertEquals("Hello Jane", expander.expand("Hello $NAME"));
+    }
+
+    static Stream<Arguments> expandSource() {
+        return Stream.of(
+                Arguments.of("Hello $NAME, from ${PLACE}.", "Hello John Doe, from Sydney."),
+                Arguments.of("$NAME$PLACE", "John DoeSydney"),
+                Arguments.of("${NAME}${PLACE}", "John DoeSydney"),
+                Arguments.of("cost: $$5 $MISSING${MISSING}!", "cost: $5 !"),
+                Arguments.of("${NAME", "John Doe"),
+                Arguments.of("${ODD NAME}", "odd"),
+                Arguments.of("trailing $", "trailing "),
+                Arguments.of("no variables", "no variables"),
+                Arguments.of("", "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("expandSource")
+    public void testExpand(String source, String expected) throws Exception {
+        Map<String, String> varMap = new HashMap<>();
+        varMap.put("NAME", "John Doe");
+        varMap.put("PLACE", "Sydney");
+        varMap.put("ODD NAME", "odd");
+        EnvVarExpander expander = new EnvVarExpander(varMap);
+        assertEquals(expected, expander.expand(source));
+
+        VarTemplate template = expander.compile(source);
+        assertSame(template, expander.compile(source));
+        StringBuilder sb = new StringBuilder("> ");
+        template.expandTo(varMap, sb);
+        assertEquals("> " + expected, sb.toString());
+        StringWriter out = new StringWriter();
+        template.expandTo(varMap, (Appendable) out);
+        assertEquals(expected, out.toString());
+    }
+
+    @Test
+    public void testCompileChangingValues() {
+        VarTemplate template = new EnvVarExpander().compile("${GREETING} $NAME, $NAME");
+        assertEquals(Arrays.asList("GREETING", "NAME", "NAME"), template.getVarNames());
+        Map<String, String> varMap = new HashMap<>();
+        varMap.put("GREETING", "Hi");
+        for (String name : new String[]{"A", "B", "C"}) {
+            varMap.put("NAME", name);
+            assertEquals("Hi " + name + ", " + name, template.expand(varMap));
+        }
     }
 
     @Test
-    public void testExpand() {
+    public void testTemplateCacheBounded() {
+        TemplateCache cache = new TemplateCache(new EnvVarExpander()::compile, 4);
+        VarTemplate first = cache.get("$VAR0");
+        for (int i = 1; i < 10; i++) {
+            // keep the first template recently used, so it is not evicted
+            assertSame(first, cache.get("$VAR0"));
+            cache.get("$VAR" + i);
+            assertTrue(cache.size() <= 4);
+        }
+        assertSame(first, cache.get("$VAR0"));
+        assertSame(cache.get("$VAR9"), cache.get("$VAR9"));
     }
 
     @Override
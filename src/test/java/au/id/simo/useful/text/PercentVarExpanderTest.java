@@ -0,0 +1,40 @@
+package au.id.simo.useful.text;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class PercentVarExpanderTest implements VarExpanderTest {
+
+    static Stream<Arguments> expandSource() {
+        return Stream.of(
+                Arguments.of("/run/%n/%i.pid", "/run/app/2.pid"),
+                Arguments.of("%n%i", "app2"),
+                Arguments.of("100%% of %n", "100% of app"),
+                Arguments.of("%missing.", "."),
+                Arguments.of("trailing %", "trailing "),
+                Arguments.of("", "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("expandSource")
+    public void testExpand(String source, String expected) {
+        PercentVarExpander expander = new PercentVarExpander();
+        expander.put("n", "app").put("i", "2");
+        assertEquals(expected, expander.expand(source));
+        assertSame(expander.compile(source), expander.compile(source));
+    }
+
+    @Override
+    public VarExpander getInstance() {
+        return new PercentVarExpander();
+    }
+}
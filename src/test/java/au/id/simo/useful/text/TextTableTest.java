@@ -1,5 +1,13 @@
 package au.id.simo.useful.text;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -8,6 +16,8 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class TextTableTest {
 
+    private static final String NL = System.lineSeparator();
+
     @Test
     public void testSomeMethod() {
         TextTable table = new TextTable();
@@ -15,4 +25,74 @@ public class TextTableTest {
         table.addRow("Row 1:","Testing", "one", "two", "three");
         table.print(System.out);
     }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        TextTable table = new TextTable();
+        table.setHeadings("ID", "NAME");
+        table.addRow(1, "a name longer than a tab");
+        table.addRow(2, null);
+        StringBuilder sb = new StringBuilder();
+        table.writeTo(sb);
+        String expected = "ID\tNAME\t\t\t\t" + NL
+                + "-------------------\t\t\t" + NL
+                + "1\ta name longer than a tab\t" + NL
+                + "2\tnull\t\t\t\t" + NL;
+        assertEquals(expected, sb.toString());
+
+        // the same through every output path
+        StringBuilder iterated = new StringBuilder();
+        for (CharSequence row : table) {
+            iterated.append(row).append(NL);
+        }
+        assertEquals(expected, iterated.toString());
+        StringWriter printed = new StringWriter();
+        table.print(new PrintWriter(printed));
+        assertEquals(expected, printed.toString());
+    }
+
+    @Test
+    public void testPrintAutoFlush() throws Exception {
+        TextTable table = new TextTable();
+        table.setHeadings("ID", "NAME");
+        table.addRow(1, "one");
+        String expected = "ID\tNAME\t" + NL
+                + "----------------" + NL
+                + "1\tone\t" + NL;
+
+        // auto flush writers are never closed, so must be flushed by print
+        ByteArrayOutputStream writerOut = new ByteArrayOutputStream();
+        table.print(new PrintWriter(new OutputStreamWriter(writerOut, StandardCharsets.UTF_8), true));
+        assertEquals(expected, new String(writerOut.toByteArray(), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+        table.print(new PrintStream(new BufferedOutputStream(streamOut), true, "UTF-8"));
+        assertEquals(expected, new String(streamOut.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRowsOfDifferentLengths() throws Exception {
+        TextTable table = new TextTable();
+        TextTable.Row first = table.newRow().addField("a");
+        table.addRow("b", "c", "d");
+        table.addRow();
+        // fields can still be added to an earlier row
+        first.addField("e");
+        assertEquals(3, table.getRowCount());
+        StringBuilder sb = new StringBuilder();
+        table.writeTo(sb);
+        assertEquals("a\te\t" + NL + "b\tc\td\t" + NL + NL, sb.toString());
+    }
+
+    @Test
+    public void testManyRows() throws Exception {
+        TextTable table = new TextTable();
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(i, "row " + i);
+        }
+        StringBuilder sb = new StringBuilder();
+        table.writeTo(sb);
+        assertEquals(1000, table.getRowCount());
+        assertTrue(sb.toString().endsWith("999\trow 999\t" + NL));
+    }
 }
@@ -0,0 +1,102 @@
+package au.id.simo.useful.text;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ */
+public class TextTableWriterTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testSameAsTextTable() throws Exception {
+        TextTable table = new TextTable();
+        table.setHeadings("Row No.", "col2", "a much longer heading");
+        table.addRow("Row 1:", "Testing", "one");
+        table.addRow("Row 2:", "a field longer than the heading", "two");
+        StringWriter expected = new StringWriter();
+        table.print(new PrintWriter(expected));
+
+        StringWriter out = new StringWriter();
+        try (TextTableWriter tableWriter = new TextTableWriter(out)) {
+            tableWriter.setHeadings("Row No.", "col2", "a much longer heading");
+            tableWriter.addRow("Row 1:", "Testing", "one");
+            tableWriter.addRow("Row 2:", "a field longer than the heading", "two");
+            // held until the sample is complete or flushed
+            assertEquals("", out.toString());
+        }
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testRowsAfterSample() throws Exception {
+        StringWriter out = new StringWriter();
+        TextTableWriter table = new TextTableWriter(out, 1, TextTableWriter.Overflow.EXTEND);
+        table.addRow("a", "b");
+        assertEquals("a\tb\t" + NL, out.toString());
+        table.addRow("a longer field", "c");
+        assertEquals("a\tb\t" + NL + "a longer field\tc\t" + NL, out.toString());
+        assertThrows(IllegalStateException.class, () -> table.setHeadings("x"));
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        StringWriter out = new StringWriter();
+        TextTableWriter table = new TextTableWriter(out, 1, TextTableWriter.Overflow.TRUNCATE);
+        table.addRow("abc", "d");
+        table.addRow("abcdef", "g", "extra column");
+        table.flush();
+        assertEquals("abc\td\t" + NL + "abc\tg\textra column\t" + NL, out.toString());
+    }
+
+    @Test
+    public void testInvalidSampleSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TextTableWriter(new StringWriter(), -1, TextTableWriter.Overflow.EXTEND));
+    }
+
+    @Test
+    public void testPrintResultSet() throws Exception {
+        String[][] data = {{"1", "one"}, {"2", null}, {"3", "three"}};
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getColumnCount")) {
+                        return 2;
+                    }
+                    return (Integer) args[0] == 1 ? "ID" : "NAME";
+                });
+        int[] rowIndex = {-1};
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return meta;
+                        case "next":
+                            return ++rowIndex[0] < data.length;
+                        case "getString":
+                            return data[rowIndex[0]][(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        StringWriter out = new StringWriter();
+        Text.print(rs, out, 2);
+        String expected = "ID\tNAME\t" + NL
+                + "----------------" + NL
+                + "1\tone\t" + NL
+                + "2\tnull\t" + NL
+                + "3\tthree\t" + NL;
+        assertEquals(expected, out.toString());
+    }
+}
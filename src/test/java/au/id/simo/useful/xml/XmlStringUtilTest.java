@@ -1,5 +1,7 @@
 package au.id.simo.useful.xml;
 
+import java.io.StringWriter;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,4 +28,63 @@ public class XmlStringUtilTest {
         String str = "& < >";
         assertEquals("&amp; &lt; &gt;", XmlStringUtil.escapeContent(str));
     }
+
+    @Test
+    public void testNothingToEscape() {
+        String str = "Nothing to escape here";
+        assertSame(str, XmlStringUtil.escapeAttribute(str));
+        assertSame(str, XmlStringUtil.escapeContent(str));
+    }
+
+    @Test
+    public void testContentLeavesAttributeChars() {
+        String str = "'quoted'\t\"text\"\n";
+        assertSame(str, XmlStringUtil.escapeContent(str));
+    }
+
+    @Test
+    public void testEscapeToAppendable() throws Exception {
+        StringWriter out = new StringWriter();
+        XmlStringUtil.escapeAttribute("a=\"<b>\" & c", out);
+        out.write('|');
+        XmlStringUtil.escapeContent("<d>'e'", out);
+        assertEquals("a=&quot;&lt;b&gt;&quot; &amp; c|&lt;d&gt;'e'", out.toString());
+
+        StringBuilder sb = new StringBuilder();
+        XmlStringUtil.escapeContent(new StringBuilder("x&y"), sb);
+        assertEquals("x&amp;y", sb.toString());
+    }
+
+    @Test
+    public void testReplaceInPlace() {
+        StringBuilder sb = new StringBuilder("keep <this> & \"that\"");
+        XmlStringUtil.replaceAttribute(sb);
+        assertEquals("keep &lt;this&gt; &amp; &quot;that&quot;", sb.toString());
+        sb = new StringBuilder("<a>");
+        XmlStringUtil.replaceContent(sb);
+        assertEquals("&lt;a&gt;", sb.toString());
+    }
+
+    @Test
+    public void testReplace() {
+        StringBuilder sb = new StringBuilder("a-a-a");
+        // replacements are not scanned again
+        XmlStringUtil.replace(sb, "a", "aa");
+        assertEquals("aa-aa-aa", sb.toString());
+        XmlStringUtil.replace(sb, "-", "");
+        assertEquals("aaaaaa", sb.toString());
+        StringBuilder empty = new StringBuilder("abc");
+        assertThrows(IllegalArgumentException.class, () -> XmlStringUtil.replace(empty, "", "x"));
+    }
+
+    @Test
+    public void testEscapeLarge() {
+        StringBuilder source = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            source.append("<\"").append(i);
+            expected.append("&lt;&quot;").append(i);
+        }
+        assertEquals(expected.toString(), XmlStringUtil.escapeAttribute(source.toString()));
+    }
 }